@@ -0,0 +1,49 @@
+package com.silenzz.flash2d.bench;
+
+/**
+ * A measured operation. The runner calls {@link #run(long)} in batches until
+ * an iteration's time is up and reports the cost of a single operation.
+ */
+public abstract class Benchmark {
+    
+    private String name;
+    
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Build the state to measure, called once before warming up.
+     */
+    public void setup() {
+    }
+    
+    /**
+     * Operations run between two reads of the clock; lower it for
+     * operations taking milliseconds.
+     */
+    public long getBatchSize() {
+        return 1000;
+    }
+    
+    /**
+     * Should the operation allocate nothing in steady state? If so the
+     * runner fails the benchmark when it measures any allocation.
+     */
+    public boolean isAllocationFree() {
+        return false;
+    }
+    
+    /**
+     * Run the operation ops times.
+     * 
+     * @return a value depending on the work done, so the JIT cannot
+     *      remove it as dead code
+     */
+    public abstract long run(long ops);
+
+}
@@ -0,0 +1,141 @@
+package com.silenzz.flash2d.bench;
+
+import java.lang.management.ManagementFactory;
+import java.text.DecimalFormat;
+
+/**
+ * Minimal harness in the spirit of JMH: warmup iterations, then measured
+ * iterations reporting time and heap allocation per operation. Allocation
+ * is read from the per-thread allocated bytes counter of HotSpot, so it
+ * shows the same numbers as the JMH GC profiler's gc.alloc.rate.norm.
+ */
+public class BenchmarkRunner {
+    
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 5;
+    private static final long ITERATION_TIME = 500_000_000L; // 0.5 sec in ns
+    
+    /**
+     * B/op under which an operation counts as allocation-free; the thread
+     * allocation counter itself is not perfectly quiet
+     */
+    private static final double ALLOCATION_TOLERANCE = 0.01;
+    
+    private com.sun.management.ThreadMXBean threads;
+    private DecimalFormat df = new DecimalFormat("#,##0.000");
+    private DecimalFormat bytesdf = new DecimalFormat("#,##0.0");
+    private long sink;
+    private int failures;
+    
+    public BenchmarkRunner() {
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        System.out.printf("%-48s %16s %16s %12s%n", "Benchmark", "ns/op", "error", "B/op");
+    }
+    
+    public Result run(Benchmark benchmark) {
+        benchmark.setup();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(benchmark);
+        }
+        
+        double[] nsPerOp = new double[ITERATIONS];
+        double bytesPerOp = 0.0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            Iteration it = iteration(benchmark);
+            nsPerOp[i] = (double) it.time / it.ops;
+            bytesPerOp += (double) it.bytes / it.ops;
+        }
+        
+        Result result = new Result(benchmark.getName(), nsPerOp, bytesPerOp / ITERATIONS);
+        System.out.printf("%-48s %16s %16s %12s%n", result.name, df.format(result.mean), 
+                "+- " + df.format(result.error), bytesdf.format(result.bytesPerOp));
+        if (benchmark.isAllocationFree() && result.bytesPerOp > ALLOCATION_TOLERANCE) {
+            System.out.println("FAILED: " + result.name + " should not allocate");
+            failures++;
+        }
+        return result;
+    }
+    
+    private Iteration iteration(Benchmark benchmark) {
+        long threadId = Thread.currentThread().getId();
+        long ops = 0;
+        long startBytes = threads.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        long time = 0;
+        long batch = benchmark.getBatchSize();
+        do {
+            sink += benchmark.run(batch);
+            ops += batch;
+            time = System.nanoTime() - startTime;
+        } while (time < ITERATION_TIME);
+        long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+        return new Iteration(ops, time, bytes);
+    }
+    
+    /**
+     * number of benchmarks that broke their expectations
+     */
+    public int getFailures() {
+        return failures;
+    }
+    
+    /**
+     * keeps the results of every run alive
+     */
+    public long getSink() {
+        return sink;
+    }
+    
+    private static class Iteration {
+        
+        private long ops;
+        private long time;
+        private long bytes;
+        
+        private Iteration(long ops, long time, long bytes) {
+            this.ops = ops;
+            this.time = time;
+            this.bytes = bytes;
+        }
+        
+    }
+    
+    public static class Result {
+        
+        private String name;
+        private double mean;
+        private double error;
+        private double bytesPerOp;
+        
+        private Result(String name, double[] nsPerOp, double bytesPerOp) {
+            this.name = name;
+            this.bytesPerOp = bytesPerOp;
+            for (double ns : nsPerOp) {
+                mean += ns;
+            }
+            mean /= nsPerOp.length;
+            for (double ns : nsPerOp) {
+                error = Math.max(error, Math.abs(ns - mean));
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getError() {
+            return error;
+        }
+
+        public double getBytesPerOp() {
+            return bytesPerOp;
+        }
+        
+    }
+
+}
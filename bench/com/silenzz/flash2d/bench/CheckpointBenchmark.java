@@ -0,0 +1,114 @@
+package com.silenzz.flash2d.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.silenzz.flash2d.GameLoop;
+import com.silenzz.flash2d.GameStateListener;
+import com.silenzz.flash2d.GameStats;
+import com.silenzz.flash2d.SimulatedClock;
+import com.silenzz.flash2d.worm.Checkpoint;
+import com.silenzz.flash2d.worm.Obstacles;
+import com.silenzz.flash2d.worm.Worm;
+
+/**
+ * Saving or loading a checkpoint of a game with numObstacles obstacles.
+ * Flash2DChecks checks that a loaded checkpoint is the saved state.
+ */
+public class CheckpointBenchmark extends Benchmark implements GameStateListener {
+    
+    private int numObstacles;
+    private boolean load;
+    private Path file;
+    private GameStats stats;
+    private Worm worm;
+    private Obstacles obs;
+    
+    public CheckpointBenchmark(int numObstacles, boolean load) {
+        super("Checkpoint." + (load ? "load" : "save") + " obstacles=" + numObstacles);
+        this.numObstacles = numObstacles;
+        this.load = load;
+    }
+    
+    @Override
+    public void setup() {
+        SimulatedClock clock = new SimulatedClock();
+        GameLoop gameLoop = new GameLoop(60, 60, this, GameLoop.Mode.HEADLESS, clock);
+        stats = gameLoop.getStats();
+        for (int i = 0; i < 200; i++) {
+            clock.advance(gameLoop.getPeriod());
+            stats.addUpdates(1 + i % 2);
+            stats.store();
+        }
+        
+        Random random = new Random(42);
+        obs = new Obstacles();
+        for (int i = 0; i < numObstacles; i++) {
+            obs.add(random.nextInt(ObstaclesBenchmark.PWIDTH), random.nextInt(ObstaclesBenchmark.PHEIGHT));
+        }
+        worm = new Worm(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, obs, 100, 42);
+        for (int i = 0; i < 150; i++) {
+            worm.move();
+        }
+        
+        try {
+            file = tempFile();
+            Checkpoint.save(file, stats, worm, obs);
+            if (load) { // restored into a game that has nothing in common with the saved one
+                stats = new GameLoop(60, 60, this, GameLoop.Mode.HEADLESS, clock).getStats();
+                obs = new Obstacles();
+                worm = new Worm(1, 1, obs, 10, 1);
+                Checkpoint.load(file, stats, worm, obs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static Path tempFile() throws IOException {
+        File file = File.createTempFile("checkpoint", ".bin");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+    
+    @Override
+    public long getBatchSize() {
+        return 1;
+    }
+    
+    @Override
+    public long run(long ops) {
+        try {
+            for (long i = 0; i < ops; i++) {
+                if (load) {
+                    Checkpoint.load(file, stats, worm, obs);
+                } else {
+                    Checkpoint.save(file, stats, worm, obs);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return obs.getNumObstacles();
+    }
+    
+    @Override
+    public void start() {
+    }
+    
+    @Override
+    public void update() {
+    }
+    
+    @Override
+    public void render() {
+    }
+    
+    @Override
+    public void finish() {
+    }
+
+}
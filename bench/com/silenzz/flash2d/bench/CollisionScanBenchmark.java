@@ -0,0 +1,84 @@
+package com.silenzz.flash2d.bench;
+
+import java.util.Random;
+
+import com.silenzz.flash2d.worm.CollisionScan;
+
+/**
+ * A brute-force collision scan over n packed coordinates, the box overlap
+ * test of Obstacles.hits() or the dot test of Worm.touchedAt(), with the
+ * scalar or the vector implementation. The queries miss everything, so the
+ * whole array is scanned. Flash2DChecks checks that the implementations
+ * agree.
+ */
+public class CollisionScanBenchmark extends Benchmark {
+    
+    private static final int QUERIES = 1024; // power of 2
+    private static final int SIZE = 12;
+    
+    private boolean overlaps;
+    private int n;
+    private CollisionScan scan;
+    private int[] xs;
+    private int[] ys;
+    private int[] queryX = new int[QUERIES];
+    private int[] queryY = new int[QUERIES];
+    
+    public CollisionScanBenchmark(boolean overlaps, int n, CollisionScan scan) {
+        super("CollisionScan." + (overlaps ? "overlaps" : "near") + " n=" + n + " " + scan.getName());
+        this.overlaps = overlaps;
+        this.n = n;
+        this.scan = scan;
+    }
+    
+    @Override
+    public void setup() {
+        Random random = new Random(42);
+        xs = new int[n];
+        ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextInt(ObstaclesBenchmark.PWIDTH);
+            ys[i] = random.nextInt(ObstaclesBenchmark.PHEIGHT);
+        }
+        
+        CollisionScan scalar = CollisionScan.scalar();
+        int misses = 0;
+        for (int tries = 0; misses < QUERIES; tries++) {
+            if (tries > QUERIES * 1000) {
+                throw new IllegalStateException("Too few queries miss, lower n");
+            }
+            int x = random.nextInt(ObstaclesBenchmark.PWIDTH + 2 * SIZE) - SIZE;
+            int y = random.nextInt(ObstaclesBenchmark.PHEIGHT + 2 * SIZE) - SIZE;
+            if (!test(scalar, 0, n, x, y)) {
+                queryX[misses] = x;
+                queryY[misses] = y;
+                misses++;
+            }
+        }
+    }
+    
+    private boolean test(CollisionScan scan, int from, int to, int x, int y) {
+        if (overlaps) {
+            return scan.overlaps(xs, ys, from, to, SIZE, x, y, SIZE);
+        }
+        return scan.near(xs, ys, from, to, SIZE / 2, SIZE / 2, x, y);
+    }
+    
+    @Override
+    public boolean isAllocationFree() {
+        return true;
+    }
+    
+    @Override
+    public long run(long ops) {
+        long hits = 0;
+        for (long i = 0; i < ops; i++) {
+            int q = (int) i & (QUERIES - 1);
+            if (test(scan, 0, n, queryX[q], queryY[q])) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.silenzz.flash2d.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.silenzz.flash2d.worm.CollisionScan;
+
+/**
+ * Runs the engine benchmarks whose name contains one of the arguments,
+ * or all of them with no arguments.
+ * 
+ * Run with -Djava.awt.headless=true; the benchmarks never open a window.
+ */
+public class Flash2DBenchmarks {
+    
+    public static void main(String[] args) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        
+        for (int numObstacles : new int[] { 16, 64, 100, 1_000, 10_000, 100_000 }) {
+            benchmarks.add(new ObstaclesBenchmark(numObstacles));
+        }
+        
+        for (int numObstacles : new int[] { 100, 10_000 }) {
+            benchmarks.add(new ObstaclesDrawBenchmark(numObstacles, false));
+            benchmarks.add(new ObstaclesDrawBenchmark(numObstacles, true));
+        }
+        
+        benchmarks.add(new WormBenchmark(1, 40, 100));
+        benchmarks.add(new WormBenchmark(1, 10_000, 100));
+        benchmarks.add(new WormBenchmark(1, 40, 10_000));
+        benchmarks.add(new WormBenchmark(1_000, 40, 100));
+        benchmarks.add(new WormBenchmark(10_000, 40, 100));
+        for (int numWorms : new int[] { 1_000, 10_000, 100_000 }) {
+            benchmarks.add(new WormPopulationBenchmark(numWorms, 40, 100, 0));
+        }
+        benchmarks.add(new WormPopulationBenchmark(100_000, 40, 100, 1));
+        benchmarks.add(new WormPopulationBenchmark(100_000, 40, 100, 4));
+        
+        for (int length : new int[] { 40, 1_000 }) {
+            benchmarks.add(new WormDrawBenchmark(length, false));
+            benchmarks.add(new WormDrawBenchmark(length, true));
+        }
+        
+        benchmarks.add(new HudBenchmark(false));
+        benchmarks.add(new HudBenchmark(true));
+        
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int[] size : new int[][] { { 1920, 1080 }, { 3840, 2160 } }) {
+            benchmarks.add(new TileRasterizerBenchmark(size[0], size[1], 10_000, 0));
+            benchmarks.add(new TileRasterizerBenchmark(size[0], size[1], 10_000, 1));
+            if (cores > 1) {
+                benchmarks.add(new TileRasterizerBenchmark(size[0], size[1], 10_000, cores));
+            }
+        }
+        
+        for (int numObstacles : new int[] { 100, 1_000 }) {
+            benchmarks.add(new WormChaseFrameBenchmark(numObstacles, false));
+            benchmarks.add(new WormChaseFrameBenchmark(numObstacles, true));
+        }
+        
+        for (int fps : new int[] { 60, 120 }) {
+            benchmarks.add(new GameStatsBenchmark(fps));
+        }
+        
+        for (int eventEvery : new int[] { 0, 60, 1 }) {
+            benchmarks.add(new SessionRecorderBenchmark(eventEvery));
+        }
+        
+        for (int numObstacles : new int[] { 1_000, 100_000, 1_000_000 }) {
+            benchmarks.add(new CheckpointBenchmark(numObstacles, false));
+            benchmarks.add(new CheckpointBenchmark(numObstacles, true));
+        }
+        
+        for (String source : new String[] { "add", "addAll", "text", "binary" }) {
+            benchmarks.add(new ObstacleMapBenchmark(1_000_000, source));
+        }
+        
+        for (int n : new int[] { 16, 40, 256, 1_000 }) {
+            for (boolean overlaps : new boolean[] { true, false }) {
+                benchmarks.add(new CollisionScanBenchmark(overlaps, n, CollisionScan.scalar()));
+                if (CollisionScan.vector() != null) {
+                    benchmarks.add(new CollisionScanBenchmark(overlaps, n, CollisionScan.vector()));
+                }
+            }
+        }
+        
+        BenchmarkRunner runner = new BenchmarkRunner();
+        for (Benchmark benchmark : benchmarks) {
+            if (matches(benchmark, args)) {
+                runner.run(benchmark);
+            }
+        }
+        System.out.println("(" + runner.getSink() + ")");
+        if (runner.getFailures() > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static boolean matches(Benchmark benchmark, String[] filters) {
+        if (filters.length == 0) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (benchmark.getName().contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
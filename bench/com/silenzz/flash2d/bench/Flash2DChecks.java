@@ -0,0 +1,544 @@
+package com.silenzz.flash2d.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.silenzz.flash2d.GameLoop;
+import com.silenzz.flash2d.GameStateListener;
+import com.silenzz.flash2d.GameStats;
+import com.silenzz.flash2d.SimulatedClock;
+import com.silenzz.flash2d.TileRasterizer;
+
+import com.silenzz.flash2d.worm.Checkpoint;
+import com.silenzz.flash2d.worm.CollisionScan;
+import com.silenzz.flash2d.worm.ObstacleMap;
+import com.silenzz.flash2d.worm.Obstacles;
+import com.silenzz.flash2d.worm.Worm;
+import com.silenzz.flash2d.worm.WormPopulation;
+
+/**
+ * Runs the engine's correctness checks whose name contains one of the
+ * arguments, or all of them with no arguments. Every check prints ok or
+ * why it failed, and the exit status is 1 if any failed, so the checks
+ * can gate a build as a test suite would.
+ * 
+ * Run with -Djava.awt.headless=true, as the benchmarks.
+ */
+public class Flash2DChecks {
+    
+    private static final int BOX_LENGTH = 12;
+    
+    private String[] filters;
+    private int failures;
+    
+    private Flash2DChecks(String[] filters) {
+        this.filters = filters;
+    }
+    
+    public static void main(String[] args) {
+        Flash2DChecks checks = new Flash2DChecks(args);
+        checks.run("Obstacles.hits matches Rectangle.intersects", Flash2DChecks::checkHits);
+        checks.run("Worm moves allocate nothing", Flash2DChecks::checkWormAllocation);
+        checks.run("TileRasterizer draws the pixels Java2D does", Flash2DChecks::checkTileRasterizer);
+        checks.run("WormPopulation moves the same on any number of threads", Flash2DChecks::checkWormPopulation);
+        checks.run("Checkpoint restores what was saved", Flash2DChecks::checkCheckpoint);
+        checks.run("Checkpoint rejects corrupt counts", Flash2DChecks::checkCorruptCheckpoint);
+        checks.run("ObstacleMap loads the boxes it saved", Flash2DChecks::checkObstacleMap);
+        checks.run("ObstacleMap reads the text format", Flash2DChecks::checkObstacleMapText);
+        if (CollisionScan.vector() != null) {
+            checks.run("CollisionScan vector agrees with scalar", Flash2DChecks::checkVectorScan);
+        } else {
+            checks.skip("CollisionScan vector agrees with scalar", "no vector implementation");
+        }
+        
+        if (checks.failures > 0) {
+            System.out.println(checks.failures + " check(s) FAILED");
+            System.exit(1);
+        }
+    }
+    
+    private void run(String name, Check check) {
+        if (!matches(name)) {
+            return;
+        }
+        try {
+            check.run();
+            System.out.println("ok      " + name);
+        } catch (Exception | AssertionError e) {
+            System.out.println("FAILED  " + name + ": " + e);
+            failures++;
+        }
+    }
+    
+    private void skip(String name, String why) {
+        if (matches(name)) {
+            System.out.println("skipped " + name + ": " + why);
+        }
+    }
+    
+    private boolean matches(String name) {
+        if (filters.length == 0) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void fail(String message) {
+        throw new IllegalStateException(message);
+    }
+    
+    /**
+     * hits() against a plain scan of Rectangle.intersects(), for few and
+     * many boxes, squares of every size around BOX_LENGTH and corners
+     * on both sides of 0
+     */
+    private static void checkHits() {
+        Random random = new Random(42);
+        for (int numBoxes : new int[] { 10, 1_000 }) {
+            Obstacles obs = new Obstacles();
+            Rectangle[] boxes = new Rectangle[numBoxes];
+            for (int i = 0; i < numBoxes; i++) {
+                int x = random.nextInt(400) - 200;
+                int y = random.nextInt(300) - 150;
+                obs.add(x, y);
+                boxes[i] = new Rectangle(x, y, BOX_LENGTH, BOX_LENGTH);
+            }
+            for (int i = 0; i < 100_000; i++) {
+                int x = random.nextInt(440) - 220;
+                int y = random.nextInt(340) - 170;
+                int size = random.nextInt(2 * BOX_LENGTH + 3) - 2;
+                Rectangle square = new Rectangle(x, y, size, size);
+                boolean expected = false;
+                for (Rectangle box : boxes) {
+                    if (box.intersects(square)) {
+                        expected = true;
+                        break;
+                    }
+                }
+                if (obs.hits(x, y, size) != expected) {
+                    fail(numBoxes + " boxes: hits(" + x + ", " + y + ", " + size + ") is " + !expected);
+                }
+            }
+        }
+    }
+    
+    /**
+     * move(), nearHead() and touchedAt() of grown worms, one Worm object
+     * each or a WormPopulation, must not create garbage; measured with the
+     * thread's allocated bytes counter, as BenchmarkRunner does
+     */
+    private static void checkWormAllocation() {
+        Random random = new Random(42);
+        Obstacles obs = new Obstacles();
+        for (int i = 0; i < 1_000; i++) {
+            obs.add(random.nextInt(ObstaclesBenchmark.PWIDTH), random.nextInt(ObstaclesBenchmark.PHEIGHT));
+        }
+        Worm worm = new Worm(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, obs, 40, 42);
+        WormPopulation worms = new WormPopulation(100, ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, obs,
+                40, 42);
+        
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        long bytes = 0;
+        long sink = 0;
+        for (int round = 0; round < 3; round++) { // the first grows the worms and warms up
+            long startBytes = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 100_000; i++) {
+                worm.move();
+                if (worm.nearHead(i & 1023, i & 511) || worm.touchedAt(i & 511, i & 1023)) {
+                    sink++;
+                }
+                if (i % 100 == 0) {
+                    worms.moveAll();
+                }
+            }
+            bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+        }
+        if (bytes > 0) {
+            fail(bytes + " bytes allocated by 100,000 moves (" + sink + " touches)");
+        }
+    }
+    
+    /**
+     * A frame of obstacles, some cut by the edges, and of a long worm
+     * drawn by the TileRasterizer on 1 and 4 threads, with tiles that do
+     * and don't divide the frame, must match Java2D pixel for pixel
+     */
+    private static void checkTileRasterizer() {
+        int width = 641;
+        int height = 479;
+        Random random = new Random(42);
+        Obstacles obs = new Obstacles();
+        for (int i = 0; i < 2_000; i++) {
+            obs.add(random.nextInt(width + 24) - 12, random.nextInt(height + 24) - 12);
+        }
+        Worm worm = new Worm(width, height, obs, 1_000, 42);
+        for (int i = 0; i < 1_000; i++) {
+            worm.move();
+        }
+        
+        BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = expected.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        obs.draw(g);
+        worm.draw(g);
+        g.dispose();
+        
+        for (int threads : new int[] { 1, 4 }) {
+            for (int tileSize : new int[] { TileRasterizer.DEFAULT_TILE_SIZE, 37 }) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                TileRasterizer rasterizer = new TileRasterizer(
+                        new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), tileSize, pool);
+                rasterizer.clear(Color.WHITE);
+                obs.draw(rasterizer);
+                worm.draw(rasterizer);
+                rasterizer.flush();
+                pool.shutdown();
+                
+                BufferedImage tiles = rasterizer.getImage();
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        if (expected.getRGB(x, y) != tiles.getRGB(x, y)) {
+                            fail(threads + " threads, tiles of " + tileSize + ": pixel (" + x + "," + y
+                                    + ") differs from Java2D");
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Worms moved on pools of 1 to 7 threads, the later ticks with
+     * obstacles in their way, must end bit for bit as on the calling thread
+     */
+    private static void checkWormPopulation() {
+        Random random = new Random(42);
+        Obstacles obs = new Obstacles();
+        for (int i = 0; i < 1_000; i++) {
+            obs.add(random.nextInt(ObstaclesBenchmark.PWIDTH), random.nextInt(ObstaclesBenchmark.PHEIGHT));
+        }
+        int numWorms = 10_000; // split into several tasks
+        WormPopulation serial = new WormPopulation(numWorms, ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT,
+                obs, 40, 42);
+        for (int j = 0; j < 100; j++) {
+            serial.moveAll();
+        }
+        for (int threads : new int[] { 1, 2, 4, 7 }) {
+            WormPopulation worms = new WormPopulation(numWorms, ObstaclesBenchmark.PWIDTH,
+                    ObstaclesBenchmark.PHEIGHT, obs, 40, 42);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            worms.setPool(pool);
+            for (int j = 0; j < 100; j++) {
+                worms.moveAll();
+            }
+            pool.shutdown();
+            if (worms.checksum() != serial.checksum()) {
+                fail("worms moved differently on " + threads + " threads");
+            }
+        }
+    }
+    
+    /**
+     * A checkpoint loaded into a game that has nothing in common with the
+     * saved one must be the saved state: saved again it gives the same
+     * bytes, the obstacles and worm answer hits() and nearHead() as the
+     * originals, and the worm goes on moving as they do. Saving must leave
+     * the game alone, and a worm that has not moved yet must load too.
+     */
+    private static void checkCheckpoint() throws IOException {
+        SimulatedClock clock = new SimulatedClock();
+        GameStats stats = newStats(60, clock);
+        Obstacles obs = new Obstacles();
+        Worm worm = newCheckpointGame(stats, clock, obs);
+        Path file = tempFile();
+        byte[] saved = save(file, stats, worm, obs);
+        
+        GameStats restoredStats = newStats(30, clock);
+        Obstacles restoredObs = new Obstacles();
+        Worm restoredWorm = new Worm(1, 1, restoredObs, 10, 1);
+        Checkpoint.load(file, restoredStats, restoredWorm, restoredObs);
+        if (restoredStats.getFrameCount() != stats.getFrameCount()
+                || restoredStats.getTimeSpentInGame() != stats.getTimeSpentInGame()) {
+            fail("stats differ once loaded");
+        }
+        
+        GameStats sameRateStats = newStats(60, clock);
+        Checkpoint.load(file, sameRateStats, restoredWorm, restoredObs);
+        Path again = tempFile();
+        if (!Arrays.equals(saved, save(again, sameRateStats, restoredWorm, restoredObs))) {
+            fail("checkpoint differs once loaded and saved again");
+        }
+        
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            int x = random.nextInt(ObstaclesBenchmark.PWIDTH);
+            int y = random.nextInt(ObstaclesBenchmark.PHEIGHT);
+            if (restoredObs.hits(x, y, BOX_LENGTH) != obs.hits(x, y, BOX_LENGTH)
+                    || restoredWorm.nearHead(x, y) != worm.nearHead(x, y)) {
+                fail("obstacles or worm differ at " + x + "," + y);
+            }
+        }
+        
+        // the original was saved twice, its twin never
+        SimulatedClock twinClock = new SimulatedClock();
+        Obstacles twinObs = new Obstacles();
+        Worm twin = newCheckpointGame(newStats(60, twinClock), twinClock, twinObs);
+        for (int i = 0; i < 1_000; i++) {
+            worm.move();
+            restoredWorm.move();
+            twin.move();
+        }
+        saved = save(file, null, worm, obs);
+        if (!Arrays.equals(saved, save(again, null, restoredWorm, restoredObs))) {
+            fail("restored worm moves differently");
+        }
+        if (!Arrays.equals(saved, save(again, null, twin, twinObs))) {
+            fail("saving changed how the worm moves");
+        }
+        
+        Worm unmoved = new Worm(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, obs, 40, 42);
+        saved = save(file, null, unmoved, obs);
+        Checkpoint.load(file, null, restoredWorm, restoredObs);
+        if (!Arrays.equals(saved, save(again, null, restoredWorm, restoredObs))) {
+            fail("unmoved worm differs once loaded and saved again");
+        }
+        Files.delete(file);
+        Files.delete(again);
+    }
+    
+    private static byte[] save(Path file, GameStats stats, Worm worm, Obstacles obs) throws IOException {
+        Checkpoint.save(file, stats, worm, obs);
+        return Files.readAllBytes(file);
+    }
+    
+    /**
+     * A checkpoint whose obstacle count, worm length or ends or stats
+     * sample count don't fit must be rejected with an IOException, leaving
+     * the game exactly as a twin that never loaded it
+     */
+    private static void checkCorruptCheckpoint() throws IOException {
+        SimulatedClock clock = new SimulatedClock();
+        GameStats stats = newStats(60, clock);
+        Obstacles obs = new Obstacles();
+        Worm worm = newCheckpointGame(stats, clock, obs);
+        Path file = tempFile();
+        Checkpoint.save(file, stats, worm, obs);
+        byte[] saved = Files.readAllBytes(file);
+        
+        ByteBuffer header = ByteBuffer.wrap(saved).order(ByteOrder.LITTLE_ENDIAN);
+        int statsStart = 6 * 4 + header.getInt(8);
+        int wormStart = statsStart + header.getInt(12);
+        int obstaclesStart = wormStart + header.getInt(16);
+        int points = worm.getMaxPoints();
+        int samplesAt = statsStart + 9 * 8 + 4 + 2 * 8;
+        int[][] corruptions = { // offset, value
+            { obstaclesStart, obs.getNumObstacles() + 1 },
+            { obstaclesStart, -1 },
+            { wormStart + 8, points + 1 },
+            { wormStart + 12, points + 1 },
+            { wormStart + 12, -1 },
+            { wormStart + 12, points - 1 }, // the worm is full, its ends points apart
+            { wormStart + 16, points },
+            { wormStart + 16, -1 },
+            { wormStart + 20, points },
+            { samplesAt, header.getInt(samplesAt) + 1 },
+            { samplesAt, -1 },
+        };
+        
+        Path twinFile = tempFile();
+        for (int[] corruption : corruptions) {
+            byte[] bytes = saved.clone();
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(corruption[0], corruption[1]);
+            Files.write(file, bytes);
+            
+            SimulatedClock targetClock = new SimulatedClock();
+            GameStats targetStats = newStats(60, targetClock);
+            Obstacles targetObs = new Obstacles();
+            Worm target = newCheckpointGame(targetStats, targetClock, targetObs);
+            try {
+                Checkpoint.load(file, targetStats, target, targetObs);
+                fail("loaded " + corruption[1] + " at byte " + corruption[0]);
+            } catch (IOException expected) {
+            }
+            
+            SimulatedClock twinClock = new SimulatedClock();
+            GameStats twinStats = newStats(60, twinClock);
+            Obstacles twinObs = new Obstacles();
+            Worm twin = newCheckpointGame(twinStats, twinClock, twinObs);
+            Checkpoint.save(file, targetStats, target, targetObs);
+            Checkpoint.save(twinFile, twinStats, twin, twinObs);
+            if (!Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(twinFile))) {
+                fail("state changed by a rejected load of " + corruption[1] + " at byte " + corruption[0]);
+            }
+        }
+        Files.delete(file);
+        Files.delete(twinFile);
+    }
+    
+    /**
+     * Boxes saved as a text and as a binary map, on both sides of 0, must
+     * load back all of them, in order
+     */
+    private static void checkObstacleMap() throws IOException {
+        Random random = new Random(42);
+        int numBoxes = 10_000;
+        int[] xs = new int[numBoxes];
+        int[] ys = new int[numBoxes];
+        for (int i = 0; i < numBoxes; i++) {
+            xs[i] = random.nextInt(ObstaclesBenchmark.PWIDTH * 4) - ObstaclesBenchmark.PWIDTH;
+            ys[i] = random.nextInt(ObstaclesBenchmark.PHEIGHT * 4) - ObstaclesBenchmark.PHEIGHT;
+        }
+        Obstacles obs = new Obstacles();
+        obs.addAll(xs, ys, 0, numBoxes);
+        
+        for (boolean text : new boolean[] { true, false }) {
+            Path map = tempFile();
+            if (text) {
+                ObstacleMap.saveText(map, obs);
+            } else {
+                ObstacleMap.saveBinary(map, obs);
+            }
+            Obstacles loaded = new Obstacles();
+            if (ObstacleMap.load(map, loaded) != numBoxes || loaded.getNumObstacles() != numBoxes) {
+                fail("wrong number of boxes loaded from the " + (text ? "text" : "binary") + " map");
+            }
+            for (int i = 0; i < numBoxes; i++) {
+                if (loaded.getX(i) != xs[i] || loaded.getY(i) != ys[i]) {
+                    fail("box " + i + " differs once loaded from the " + (text ? "text" : "binary") + " map");
+                }
+            }
+            Files.delete(map);
+        }
+    }
+    
+    /**
+     * Comments, blank lines, CRLF, tabs and commas between the coordinates
+     * and negative numbers of a hand-written text map
+     */
+    private static void checkObstacleMapText() throws IOException {
+        byte[] sample = "# comment\r\n\r\n  10 20\n-5,\t7 # box\n30 , -40".getBytes(StandardCharsets.US_ASCII);
+        Obstacles parsed = new Obstacles();
+        if (ObstacleMap.read(new ByteArrayInputStream(sample), parsed) != 3
+                || parsed.getX(0) != 10 || parsed.getY(0) != 20 || parsed.getX(1) != -5
+                || parsed.getY(1) != 7 || parsed.getX(2) != 30 || parsed.getY(2) != -40) {
+            fail("text map sample misread");
+        }
+    }
+    
+    /**
+     * The vector overlaps() and near() against the scalar ones on random
+     * subranges, so the scalar tail of the vector loop is run too, for
+     * queries that hit and that miss
+     */
+    private static void checkVectorScan() {
+        CollisionScan scalar = CollisionScan.scalar();
+        CollisionScan vector = CollisionScan.vector();
+        Random random = new Random(42);
+        for (int n : new int[] { 3, 16, 100, 1_000 }) {
+            int[] xs = new int[n];
+            int[] ys = new int[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = random.nextInt(ObstaclesBenchmark.PWIDTH);
+                ys[i] = random.nextInt(ObstaclesBenchmark.PHEIGHT);
+            }
+            for (int i = 0; i < 100_000; i++) {
+                int x = random.nextInt(ObstaclesBenchmark.PWIDTH + 2 * BOX_LENGTH) - BOX_LENGTH;
+                int y = random.nextInt(ObstaclesBenchmark.PHEIGHT + 2 * BOX_LENGTH) - BOX_LENGTH;
+                int size = random.nextInt(2 * BOX_LENGTH) + 1;
+                int from = random.nextInt(n);
+                int to = from + random.nextInt(n - from + 1);
+                if (vector.overlaps(xs, ys, from, to, BOX_LENGTH, x, y, size)
+                        != scalar.overlaps(xs, ys, from, to, BOX_LENGTH, x, y, size)) {
+                    fail(vector.getName() + " overlaps() differs at " + x + "," + y + " size " + size + " in ["
+                            + from + ", " + to + ")");
+                }
+                if (vector.near(xs, ys, from, to, size / 2, size / 2, x, y)
+                        != scalar.near(xs, ys, from, to, size / 2, size / 2, x, y)) {
+                    fail(vector.getName() + " near() differs at " + x + "," + y + " radius " + size / 2 + " in ["
+                            + from + ", " + to + ")");
+                }
+            }
+        }
+    }
+    
+    private static GameStats newStats(int fps, SimulatedClock clock) {
+        return new GameLoop(fps, fps, new IdleGame(), GameLoop.Mode.HEADLESS, clock).getStats();
+    }
+    
+    /**
+     * Fill stats, obs and the worm returned with the same 200 frames, 1,000
+     * obstacles and 150 moves every time
+     */
+    private static Worm newCheckpointGame(GameStats stats, SimulatedClock clock, Obstacles obs) {
+        for (int i = 0; i < 200; i++) {
+            clock.advance(1_000_000_000L / 60);
+            stats.addUpdates(1 + i % 2);
+            stats.store();
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 1_000; i++) {
+            obs.add(random.nextInt(ObstaclesBenchmark.PWIDTH), random.nextInt(ObstaclesBenchmark.PHEIGHT));
+        }
+        Worm worm = new Worm(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, obs, 100, 42);
+        for (int i = 0; i < 150; i++) {
+            worm.move();
+        }
+        return worm;
+    }
+    
+    private static Path tempFile() throws IOException {
+        File file = File.createTempFile("checkpoint", ".bin");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+    
+    private interface Check {
+        
+        void run() throws Exception;
+    
+    }
+    
+    private static class IdleGame implements GameStateListener {
+        
+        @Override
+        public void start() {
+        }
+        
+        @Override
+        public void update() {
+        }
+        
+        @Override
+        public void render() {
+        }
+        
+        @Override
+        public void finish() {
+        }
+    
+    }
+
+}
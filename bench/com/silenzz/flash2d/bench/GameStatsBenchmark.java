@@ -0,0 +1,58 @@
+package com.silenzz.flash2d.bench;
+
+import com.silenzz.flash2d.GameLoop;
+import com.silenzz.flash2d.GameStats;
+import com.silenzz.flash2d.GameStateListener;
+import com.silenzz.flash2d.SimulatedClock;
+
+/**
+ * The per-frame bookkeeping of GameStats at a given frame rate, with a
+ * simulated clock so every fps-th call does the once a second work.
+ */
+public class GameStatsBenchmark extends Benchmark implements GameStateListener {
+    
+    private int fps;
+    private SimulatedClock clock;
+    private GameLoop gameLoop;
+    private GameStats stats;
+    
+    public GameStatsBenchmark(int fps) {
+        super("GameStats.store fps=" + fps);
+        this.fps = fps;
+    }
+    
+    @Override
+    public void setup() {
+        clock = new SimulatedClock();
+        gameLoop = new GameLoop(fps, fps, this, GameLoop.Mode.HEADLESS, clock);
+        stats = gameLoop.getStats();
+    }
+
+    @Override
+    public long run(long ops) {
+        long period = gameLoop.getPeriod();
+        for (long i = 0; i < ops; i++) {
+            clock.advance(period);
+            stats.addUpdates(1);
+            stats.store();
+        }
+        return stats.getTimeSpentInGame();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void update() {
+    }
+
+    @Override
+    public void render() {
+    }
+
+    @Override
+    public void finish() {
+    }
+
+}
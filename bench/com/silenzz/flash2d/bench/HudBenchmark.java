@@ -0,0 +1,85 @@
+package com.silenzz.flash2d.bench;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import com.silenzz.flash2d.GameLoop;
+import com.silenzz.flash2d.GameStats;
+import com.silenzz.flash2d.HudLabel;
+import com.silenzz.flash2d.SimulatedClock;
+
+/**
+ * One frame of the WormChase HUD on the software pipeline: the frame count,
+ * averages and time spent, drawn from the GameStats label strings or from
+ * cached HudLabels. The stats advance one frame per operation.
+ */
+public class HudBenchmark extends Benchmark {
+    
+    private static final int FPS = 60;
+    
+    private boolean cached;
+    private SimulatedClock clock;
+    private GameStats stats;
+    private long period;
+    private Graphics2D g;
+    private BufferedImage image;
+    
+    private HudLabel frameCountLabel;
+    private HudLabel averageLabel;
+    private HudLabel timeSpentLabel;
+    
+    public HudBenchmark(boolean cached) {
+        super("HUD frame" + (cached ? " HudLabel" : " drawString"));
+        this.cached = cached;
+    }
+    
+    @Override
+    public void setup() {
+        clock = new SimulatedClock();
+        GameLoop gameLoop = new GameLoop(FPS, FPS, new GameStatsBenchmark(FPS), GameLoop.Mode.HEADLESS, clock);
+        stats = gameLoop.getStats();
+        period = gameLoop.getPeriod();
+        
+        Font font = new Font("SansSerif", Font.BOLD, 24);
+        image = new BufferedImage(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT);
+        g.setFont(font);
+        g.setColor(Color.BLUE);
+        
+        frameCountLabel = new HudLabel(font, Color.BLUE, Color.WHITE, false, "Frame Count ", "");
+        averageLabel = new HudLabel(font, Color.BLUE, Color.WHITE, true, "Average FPS/UPS: ", " / ", "");
+        timeSpentLabel = new HudLabel(font, Color.BLUE, Color.WHITE, false, "Time Spent: ", " secs");
+    }
+    
+    @Override
+    public long getBatchSize() {
+        return 100;
+    }
+
+    @Override
+    public long run(long ops) {
+        for (long i = 0; i < ops; i++) {
+            clock.advance(period);
+            stats.addUpdates(1);
+            stats.store();
+            if (cached) {
+                frameCountLabel.set(stats.getFrameCount());
+                averageLabel.set((long) Math.rint(stats.getAverageFps()), (long) Math.rint(stats.getAverageUps()));
+                timeSpentLabel.set(stats.getTimeSpentInGame());
+                frameCountLabel.draw(g, 10, 25);
+                averageLabel.draw(g, 250, 25);
+                timeSpentLabel.draw(g, 10, ObstaclesBenchmark.PHEIGHT - 15);
+            } else {
+                g.drawString(stats.getFrameCountLabel(), 10, 25);
+                g.drawString(stats.getAverageLabel(), 250, 25);
+                g.drawString(stats.getTimeSpentLabel(), 10, ObstaclesBenchmark.PHEIGHT - 15);
+            }
+        }
+        return image.getRGB(10, 25);
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.silenzz.flash2d.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.silenzz.flash2d.worm.ObstacleMap;
+import com.silenzz.flash2d.worm.Obstacles;
+
+/**
+ * Filling empty obstacles with numBoxes boxes, from:
+ *     add      an add() per box
+ *     addAll   one addAll() of arrays
+ *     text     a text map file
+ *     binary   a binary map file
+ * Flash2DChecks checks that both map formats load the boxes they were
+ * saved from, in order.
+ */
+public class ObstacleMapBenchmark extends Benchmark {
+    
+    private int numBoxes;
+    private String source;
+    private int[] xs;
+    private int[] ys;
+    private Path file;
+    
+    public ObstacleMapBenchmark(int numBoxes, String source) {
+        super("ObstacleMap." + source + " boxes=" + numBoxes);
+        this.numBoxes = numBoxes;
+        this.source = source;
+    }
+    
+    @Override
+    public void setup() {
+        Random random = new Random(42);
+        xs = new int[numBoxes];
+        ys = new int[numBoxes];
+        for (int i = 0; i < numBoxes; i++) {
+            xs[i] = random.nextInt(ObstaclesBenchmark.PWIDTH * 4) - ObstaclesBenchmark.PWIDTH;
+            ys[i] = random.nextInt(ObstaclesBenchmark.PHEIGHT * 4) - ObstaclesBenchmark.PHEIGHT;
+        }
+        if (source.equals("add") || source.equals("addAll")) {
+            return;
+        }
+        Obstacles obs = new Obstacles();
+        obs.addAll(xs, ys, 0, numBoxes);
+        
+        try {
+            File map = File.createTempFile("obstacles", source.equals("text") ? ".txt" : ".map");
+            map.deleteOnExit();
+            file = map.toPath();
+            if (source.equals("text")) {
+                ObstacleMap.saveText(file, obs);
+            } else {
+                ObstacleMap.saveBinary(file, obs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @Override
+    public long getBatchSize() {
+        return 1;
+    }
+    
+    @Override
+    public long run(long ops) {
+        long sum = 0;
+        try {
+            for (long i = 0; i < ops; i++) {
+                Obstacles obs = new Obstacles();
+                switch (source) {
+                case "add":
+                    for (int j = 0; j < numBoxes; j++) {
+                        obs.add(xs[j], ys[j]);
+                    }
+                    break;
+                case "addAll":
+                    obs.addAll(xs, ys, 0, numBoxes);
+                    break;
+                default:
+                    ObstacleMap.load(file, obs);
+                    break;
+                }
+                sum += obs.getNumObstacles();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sum;
+    }
+
+}
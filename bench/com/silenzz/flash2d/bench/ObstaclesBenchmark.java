@@ -0,0 +1,52 @@
+package com.silenzz.flash2d.bench;
+
+import java.awt.Point;
+import java.util.Random;
+
+import com.silenzz.flash2d.worm.Obstacles;
+
+/**
+ * Obstacles.hits() with numObstacles boxes spread over a full HD screen,
+ * probed at random points the size of a worm dot.
+ */
+public class ObstaclesBenchmark extends Benchmark {
+    
+    static final int PWIDTH = 1920;
+    static final int PHEIGHT = 1080;
+    private static final int DOT_SIZE = 12;
+    private static final int NUM_PROBES = 1024; // power of 2
+    
+    private int numObstacles;
+    private Obstacles obs;
+    private Point[] probes;
+    
+    public ObstaclesBenchmark(int numObstacles) {
+        super("Obstacles.hits obstacles=" + numObstacles);
+        this.numObstacles = numObstacles;
+    }
+    
+    @Override
+    public void setup() {
+        Random random = new Random(42);
+        obs = new Obstacles();
+        for (int i = 0; i < numObstacles; i++) {
+            obs.add(random.nextInt(PWIDTH), random.nextInt(PHEIGHT));
+        }
+        probes = new Point[NUM_PROBES];
+        for (int i = 0; i < NUM_PROBES; i++) {
+            probes[i] = new Point(random.nextInt(PWIDTH), random.nextInt(PHEIGHT));
+        }
+    }
+
+    @Override
+    public long run(long ops) {
+        long hits = 0;
+        for (long i = 0; i < ops; i++) {
+            if (obs.hits(probes[(int) i & (NUM_PROBES - 1)], DOT_SIZE)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+}
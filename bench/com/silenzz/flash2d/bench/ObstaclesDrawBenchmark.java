@@ -0,0 +1,57 @@
+package com.silenzz.flash2d.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import com.silenzz.flash2d.worm.Obstacles;
+
+/**
+ * One full-screen Obstacles.draw() into an offscreen image, box by box or
+ * from the cached layer.
+ */
+public class ObstaclesDrawBenchmark extends Benchmark {
+    
+    private int numObstacles;
+    private boolean cached;
+    private Obstacles obs;
+    private BufferedImage image;
+    private Graphics2D g;
+    
+    public ObstaclesDrawBenchmark(int numObstacles, boolean cached) {
+        super("Obstacles.draw obstacles=" + numObstacles + (cached ? " cached" : ""));
+        this.numObstacles = numObstacles;
+        this.cached = cached;
+    }
+    
+    @Override
+    public void setup() {
+        Random random = new Random(42);
+        obs = new Obstacles();
+        if (cached) {
+            obs.cacheLayer(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT);
+        }
+        for (int i = 0; i < numObstacles; i++) {
+            obs.add(random.nextInt(ObstaclesBenchmark.PWIDTH), random.nextInt(ObstaclesBenchmark.PHEIGHT));
+        }
+        image = new BufferedImage(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT);
+    }
+
+    @Override
+    public long getBatchSize() {
+        return 1;
+    }
+
+    @Override
+    public long run(long ops) {
+        for (long i = 0; i < ops; i++) {
+            obs.draw(g);
+        }
+        return image.getRGB(0, 0);
+    }
+
+}
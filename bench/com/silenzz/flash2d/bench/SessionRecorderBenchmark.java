@@ -0,0 +1,67 @@
+package com.silenzz.flash2d.bench;
+
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.silenzz.flash2d.InputBatch;
+import com.silenzz.flash2d.InputQueue;
+import com.silenzz.flash2d.SessionRecorder;
+
+/**
+ * What logging a session costs an update: one tick recorded, with a mouse
+ * event every eventEvery ticks (0 for none), into a temporary file.
+ */
+public class SessionRecorderBenchmark extends Benchmark {
+    
+    private int eventEvery;
+    private SessionRecorder recorder;
+    private InputBatch empty;
+    private InputBatch event;
+    private long tick;
+    
+    public SessionRecorderBenchmark(int eventEvery) {
+        super("SessionRecorder.record eventEvery=" + eventEvery);
+        this.eventEvery = eventEvery;
+    }
+    
+    @Override
+    public void setup() {
+        try {
+            File file = File.createTempFile("session", ".log");
+            file.deleteOnExit();
+            recorder = new SessionRecorder(file.toPath(), 42, 1280, 1024, 60);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        InputQueue queue = new InputQueue(16);
+        empty = new InputBatch(16);
+        event = new InputBatch(16);
+        queue.post(MouseEvent.MOUSE_DRAGGED, 640, 512, 0, 0);
+        queue.drainTo(event);
+    }
+    
+    /**
+     * records go to a direct buffer, written out as it is, so nothing
+     * is allocated even when the file is written
+     */
+    @Override
+    public boolean isAllocationFree() {
+        return true;
+    }
+    
+    @Override
+    public long run(long ops) {
+        try {
+            for (long i = 0; i < ops; i++) {
+                boolean input = eventEvery > 0 && tick % eventEvery == 0;
+                recorder.record(tick++, input ? event : empty);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return tick;
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.silenzz.flash2d.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.silenzz.flash2d.TileRasterizer;
+import com.silenzz.flash2d.worm.Obstacles;
+import com.silenzz.flash2d.worm.Worm;
+
+/**
+ * A frame of obstacles and a grown worm drawn offscreen with Java2D on the
+ * calling thread (threads=0), or with the TileRasterizer on a pool of the
+ * given number of threads. Flash2DChecks checks that both give the same
+ * pixels.
+ */
+public class TileRasterizerBenchmark extends Benchmark {
+    
+    private static final int WORM_LENGTH = 1_000;
+    
+    private int width;
+    private int height;
+    private int numObstacles;
+    private int threads;
+    
+    private Obstacles obs;
+    private Worm worm;
+    private BufferedImage image;
+    private Graphics2D g;
+    private TileRasterizer rasterizer;
+    
+    public TileRasterizerBenchmark(int width, int height, int numObstacles, int threads) {
+        super("Frame " + width + "x" + height + " obstacles=" + numObstacles
+                + (threads == 0 ? " Java2D" : " tiles threads=" + threads));
+        this.width = width;
+        this.height = height;
+        this.numObstacles = numObstacles;
+        this.threads = threads;
+    }
+    
+    @Override
+    public void setup() {
+        obs = new Obstacles();
+        Random random = new Random(42);
+        for (int i = 0; i < numObstacles; i++) {
+            obs.add(random.nextInt(width), random.nextInt(height));
+        }
+        worm = new Worm(width, height, obs, WORM_LENGTH, random.nextLong());
+        for (int i = 0; i < WORM_LENGTH; i++) {
+            worm.move();
+        }
+        
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        rasterizer = new TileRasterizer(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB),
+                TileRasterizer.DEFAULT_TILE_SIZE, new ForkJoinPool(Math.max(threads, 1)));
+
+    }
+    
+    @Override
+    public long getBatchSize() {
+        return 1;
+    }
+
+    @Override
+    public long run(long ops) {
+        for (long i = 0; i < ops; i++) {
+            if (threads == 0) {
+                drawJava2D();
+            } else {
+                drawTiles();
+            }
+        }
+        return image.getRGB(0, 0) + rasterizer.getImage().getRGB(0, 0);
+    }
+    
+    private void drawJava2D() {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        obs.draw(g);
+        worm.draw(g);
+    }
+    
+    private void drawTiles() {
+        rasterizer.clear(Color.WHITE);
+        obs.draw(rasterizer);
+        worm.draw(rasterizer);
+        rasterizer.flush();
+    }
+
+}
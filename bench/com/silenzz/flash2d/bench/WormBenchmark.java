@@ -0,0 +1,61 @@
+package com.silenzz.flash2d.bench;
+
+import java.util.Random;
+
+import com.silenzz.flash2d.worm.Obstacles;
+import com.silenzz.flash2d.worm.Worm;
+
+/**
+ * One game tick: every one of numWorms worms, each up to length dots long,
+ * moves once among numObstacles obstacles. The worms are grown to full
+ * length during setup so the steady state is measured.
+ */
+public class WormBenchmark extends Benchmark {
+    
+    private int numWorms;
+    private int length;
+    private int numObstacles;
+    private Worm[] worms;
+    
+    public WormBenchmark(int numWorms, int length, int numObstacles) {
+        super("Worm.move worms=" + numWorms + " length=" + length + " obstacles=" + numObstacles);
+        this.numWorms = numWorms;
+        this.length = length;
+        this.numObstacles = numObstacles;
+    }
+    
+    @Override
+    public void setup() {
+        Random random = new Random(42);
+        Obstacles obs = new Obstacles();
+        for (int i = 0; i < numObstacles; i++) {
+            obs.add(random.nextInt(ObstaclesBenchmark.PWIDTH), random.nextInt(ObstaclesBenchmark.PHEIGHT));
+        }
+        worms = new Worm[numWorms];
+        for (int i = 0; i < numWorms; i++) {
+            worms[i] = new Worm(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, obs, length, random.nextLong());
+            for (int j = 0; j < length; j++) {
+                worms[i].move();
+            }
+        }
+    }
+
+    /**
+     * moving a grown worm must not create any garbage
+     */
+    @Override
+    public boolean isAllocationFree() {
+        return true;
+    }
+
+    @Override
+    public long run(long ops) {
+        for (long i = 0; i < ops; i++) {
+            for (int j = 0; j < numWorms; j++) {
+                worms[j].move();
+            }
+        }
+        return worms[0].nearHead(0, 0) ? 1 : 0;
+    }
+
+}
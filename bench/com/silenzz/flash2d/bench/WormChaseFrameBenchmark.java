@@ -0,0 +1,58 @@
+package com.silenzz.flash2d.bench;
+
+import java.awt.event.MouseEvent;
+import java.util.Random;
+
+import com.silenzz.flash2d.GameLoop;
+import com.silenzz.flash2d.ImageTarget;
+import com.silenzz.flash2d.worm.WormChase;
+
+/**
+ * A whole WormChase frame, update and render, drawn into an offscreen
+ * {@link ImageTarget}, with every frame repainted in full or with
+ * dirty-region rendering.
+ */
+public class WormChaseFrameBenchmark extends Benchmark {
+    
+    private int numObstacles;
+    private boolean dirtyRendering;
+    private WormChase game;
+    private ImageTarget target;
+    
+    public WormChaseFrameBenchmark(int numObstacles, boolean dirtyRendering) {
+        super("WormChase frame obstacles=" + numObstacles + (dirtyRendering ? " dirty" : " full"));
+        this.numObstacles = numObstacles;
+        this.dirtyRendering = dirtyRendering;
+    }
+    
+    @Override
+    public void setup() {
+        target = new ImageTarget(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT);
+        game = new WormChase(target, GameLoop.Mode.HEADLESS);
+        game.start();
+        game.setDirtyRendering(dirtyRendering);
+        
+        // dragging adds obstacles anywhere, even on the worm
+        Random random = new Random(42);
+        for (int i = 0; i < numObstacles; i++) {
+            game.postInput(MouseEvent.MOUSE_DRAGGED, random.nextInt(ObstaclesBenchmark.PWIDTH),
+                    random.nextInt(ObstaclesBenchmark.PHEIGHT), 0, 0);
+        }
+        game.update();
+    }
+    
+    @Override
+    public long getBatchSize() {
+        return 10;
+    }
+    
+    @Override
+    public long run(long ops) {
+        for (long i = 0; i < ops; i++) {
+            game.update();
+            game.render();
+        }
+        return target.getImage().getRGB(0, 0) + target.getFramesShown();
+    }
+
+}
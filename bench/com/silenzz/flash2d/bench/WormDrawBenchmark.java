@@ -0,0 +1,54 @@
+package com.silenzz.flash2d.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import com.silenzz.flash2d.worm.Obstacles;
+import com.silenzz.flash2d.worm.Worm;
+
+/**
+ * Worm.draw() of a grown worm into an offscreen image, that is on the
+ * software (non-accelerated) pipeline, with sprites or with fillOval().
+ */
+public class WormDrawBenchmark extends Benchmark {
+    
+    private int length;
+    private boolean sprites;
+    private Worm worm;
+    private BufferedImage image;
+    private Graphics2D g;
+    
+    public WormDrawBenchmark(int length, boolean sprites) {
+        super("Worm.draw length=" + length + (sprites ? " sprites" : " fillOval"));
+        this.length = length;
+        this.sprites = sprites;
+    }
+    
+    @Override
+    public void setup() {
+        worm = new Worm(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, new Obstacles(), length, 42);
+        worm.setUseSprites(sprites);
+        for (int i = 0; i < length; i++) {
+            worm.move();
+        }
+        image = new BufferedImage(ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT);
+    }
+    
+    @Override
+    public long getBatchSize() {
+        return 10;
+    }
+
+    @Override
+    public long run(long ops) {
+        for (long i = 0; i < ops; i++) {
+            worm.draw(g);
+        }
+        return image.getRGB(0, 0);
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.silenzz.flash2d.bench;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.silenzz.flash2d.worm.Obstacles;
+import com.silenzz.flash2d.worm.WormPopulation;
+
+/**
+ * One game tick of a WormPopulation: moveAll() of numWorms worms, each up
+ * to length dots long, among numObstacles obstacles, on the calling thread
+ * (threads=0) or on a pool of the given number of threads. Compare with
+ * WormBenchmark, the same tick with one Worm object per worm.
+ * 
+ * Flash2DChecks checks that moving the worms on a pool gives exactly the
+ * state moving them on one thread does.
+ */
+public class WormPopulationBenchmark extends Benchmark {
+    
+    private int numWorms;
+    private int length;
+    private int numObstacles;
+    private int threads;
+    private WormPopulation worms;
+    
+    public WormPopulationBenchmark(int numWorms, int length, int numObstacles, int threads) {
+        super("WormPopulation.moveAll worms=" + numWorms + " length=" + length + " obstacles=" + numObstacles
+                + (threads > 0 ? " threads=" + threads : ""));
+        this.numWorms = numWorms;
+        this.length = length;
+        this.numObstacles = numObstacles;
+        this.threads = threads;
+    }
+    
+    @Override
+    public void setup() {
+        Random random = new Random(42);
+        Obstacles obs = new Obstacles();
+        for (int i = 0; i < numObstacles; i++) {
+            obs.add(random.nextInt(ObstaclesBenchmark.PWIDTH), random.nextInt(ObstaclesBenchmark.PHEIGHT));
+        }
+        worms = new WormPopulation(numWorms, ObstaclesBenchmark.PWIDTH, ObstaclesBenchmark.PHEIGHT, obs, length, 42);
+        for (int j = 0; j < length; j++) {
+            worms.moveAll();
+        }
+        if (threads > 0) {
+            worms.setPool(new ForkJoinPool(threads));
+        }
+    }
+    
+    @Override
+    public long getBatchSize() {
+        return 10;
+    }
+    
+    /**
+     * on a pool, the tasks splitting the worms are new every tick
+     */
+    @Override
+    public boolean isAllocationFree() {
+        return threads == 0;
+    }
+
+    @Override
+    public long run(long ops) {
+        for (long i = 0; i < ops; i++) {
+            worms.moveAll();
+        }
+        return worms.getHeadX(0);
+    }
+
+}
@@ -0,0 +1,271 @@
+package com.silenzz.flash2d;
+
+import java.awt.BufferCapabilities;
+import java.awt.Component;
+import java.awt.DisplayMode;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.image.BufferStrategy;
+
+import javax.swing.JFrame;
+
+/**
+ * A frame covering the whole screen, in full-screen exclusive mode when it
+ * is supported, drawn with active rendering and page flipping through a
+ * BufferStrategy.
+ */
+public class BufferStrategyTarget implements RenderTarget {
+    
+    private static final int NUM_BUFFERS = 2;
+    
+    private GraphicsDevice gd;
+    private JFrame frame;
+    private BufferStrategy bufferStrategy;
+    private boolean fullScreen;
+    
+    private int width;
+    private int height;
+    
+    public BufferStrategyTarget(String title) {
+        frame = new JFrame(title);
+        initFullScreen();
+    }
+    
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
+    @Override
+    public GraphicsConfiguration getGraphicsConfiguration() {
+        return frame.getGraphicsConfiguration();
+    }
+    
+    @Override
+    public Component getComponent() {
+        return frame;
+    }
+    
+    /**
+     * The back buffer is undefined after a flip.
+     */
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+    
+    @Override
+    public Graphics2D getDrawGraphics() {
+        return (Graphics2D) bufferStrategy.getDrawGraphics();
+    }
+    
+    @Override
+    public boolean show() {
+        boolean shown = false;
+        if (!bufferStrategy.contentsLost()) {
+            bufferStrategy.show();
+            shown = true;
+        } else {
+            System.out.println("Contents Lost");
+        }
+        // Sync the display on some systems.
+        // (on Linux, this fixes event queue problems)
+        Toolkit.getDefaultToolkit().sync();
+        return shown;
+    }
+    
+    @Override
+    public void dispose() {
+        restoreScreen();
+    }
+    
+    public boolean isFullScreen() {
+        return fullScreen;
+    }
+    
+    private void initFullScreen() {
+        GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
+        gd = ge.getDefaultScreenDevice();
+        
+        frame.setUndecorated(true); // no menu bar, borders, etc. or Swing components
+        frame.setIgnoreRepaint(true); // turn off all paint events since doing active rendering
+        frame.setResizable(false);
+        
+        fullScreen = gd.isFullScreenSupported();
+        if (fullScreen) {
+            gd.setFullScreenWindow(frame); // switch on full-screen exclusive mode
+        } else {
+            // a window as big as the screen does nearly as well
+            System.out.println("Full-screen exclusive mode not supported");
+            frame.setBounds(gd.getDefaultConfiguration().getBounds());
+            frame.setVisible(true);
+        }
+        
+        // we can now adjust the display modes, if we wish
+        showCurrentMode();
+        
+        // setDisplayMode(800, 600, 8); // or try 8 bits
+        // setDisplayMode(1280, 1024, 32);
+        
+        reportCapabilities();
+        
+        width = frame.getBounds().width;
+        height = frame.getBounds().height;
+        
+        setBufferStrategy();
+    }
+    
+    private void reportCapabilities() {
+        GraphicsConfiguration gc = gd.getDefaultConfiguration();
+        
+        // Image Capabilities
+        ImageCapabilities imageCaps = gc.getImageCapabilities();
+        System.out.println("Image Caps. isAccelerated: " + imageCaps.isAccelerated());
+        System.out.println("Image Caps. isTrueVolatile: " + imageCaps.isTrueVolatile());
+        
+        // Buffer Capabilities
+        BufferCapabilities bufferCaps = gc.getBufferCapabilities();
+        System.out.println("Buffer Caps. isPageFlipping: " + bufferCaps.isPageFlipping());
+        System.out.println("Buffer Caps. Flip Contents: " + getFlipText(bufferCaps.getFlipContents()));
+        System.out.println("Buffer Caps. Full-screen Required: " + bufferCaps.isFullScreenRequired());
+        System.out.println("Buffer Caps. MultiBuffers: " + bufferCaps.isMultiBufferAvailable());
+    }
+    
+    private String getFlipText(BufferCapabilities.FlipContents flip) {
+        if (flip == null) {
+            return "false";
+        } else if (flip == BufferCapabilities.FlipContents.UNDEFINED) {
+            return "Undefined";
+        } else if (flip == BufferCapabilities.FlipContents.BACKGROUND) {
+            return "Background";
+        } else if (flip == BufferCapabilities.FlipContents.PRIOR) {
+            return "Prior";
+        } else { // if (flip == BufferCapabilities.FlipContents.COPIED)
+            return "Copied";
+        }
+    }
+    
+    /**
+     * Switch on page flipping: NUM_BUFFERS == 2 so there will be a 'primary
+     * surface' and one 'back buffer'.
+     * 
+     * The use of invokeAndWait() is to avoid a possible deadlock with the event
+     * dispatcher thread. Should be fixed in J2SE 1.5
+     * 
+     * createBufferStrategy) is an asynchronous operation, so sleep a bit so that
+     * the getBufferStrategy() call will get the correct details.
+     */
+    private void setBufferStrategy() {
+        try {
+            EventQueue.invokeAndWait(new Runnable() {
+                public void run() {
+                    frame.createBufferStrategy(NUM_BUFFERS);
+                }
+            });
+        } catch (Exception e) {
+            System.out.println("Error while creating buffer strategy");
+            System.exit(0);
+        }
+        
+        try { // sleep to give time for the buffer strategy to be carried out
+            Thread.sleep(500); // 0.5 sec
+        } catch (InterruptedException ex) {
+        }
+        
+        bufferStrategy = frame.getBufferStrategy();
+    }
+    
+    /**
+     * Switch off full screen mode. This also resets the display mode if it's been
+     * changed.
+     */
+    private void restoreScreen() {
+        Window w = gd.getFullScreenWindow();
+        if (w != null) {
+            w.dispose();
+        }
+        gd.setFullScreenWindow(null);
+        frame.dispose();
+    }
+    
+    /**
+     * attempt to set the display mode to the given width, height, and bit depth
+     */
+    private void setDisplayMode(int width, int height, int bitDepth) {
+        if (!gd.isDisplayChangeSupported()) {
+            System.out.println("Display mode changing not supported");
+            return;
+        }
+        
+        if (!isDisplayModeAvailable(width, height, bitDepth)) {
+            System.out.println("Display mode (" + width + "," + height + "," + bitDepth + ") not available");
+            return;
+        }
+        
+        DisplayMode dm = new DisplayMode(width, height, bitDepth, DisplayMode.REFRESH_RATE_UNKNOWN); // any refresh rate
+        try {
+            gd.setDisplayMode(dm);
+            System.out.println("Display mode set to: (" + width + "," + height + "," + bitDepth + ")");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error setting Display mode (" + width + "," + height + "," + bitDepth + ")");
+        }
+        
+        try { // sleep to give time for the display to be changed
+            Thread.sleep(1000); // 1 sec
+        } catch (InterruptedException ex) {
+        }
+    }
+    
+    /**
+     * Check that a displayMode with this width, height, bit depth is available. We
+     * don't care about the refresh rate, which is probably REFRESH_RATE_UNKNOWN
+     * anyway.
+     */
+    private boolean isDisplayModeAvailable(int width, int height, int bitDepth) {
+        DisplayMode[] modes = gd.getDisplayModes();
+        showModes(modes);
+        
+        for (int i = 0; i < modes.length; i++) {
+            if (width == modes[i].getWidth() && height == modes[i].getHeight() && bitDepth == modes[i].getBitDepth()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * pretty print the display mode information in modes
+     */
+    private void showModes(DisplayMode[] modes) {
+        System.out.println("Modes");
+        for (int i = 0; i < modes.length; i++) {
+            System.out.print("(" + modes[i].getWidth() + "," + modes[i].getHeight() + "," + modes[i].getBitDepth() + ","
+                    + modes[i].getRefreshRate() + ")  ");
+            if ((i + 1) % 4 == 0) {
+                System.out.println();
+            }
+        }
+        System.out.println();
+    }
+    
+    /**
+     * print the display mode details for the graphics device
+     */
+    private void showCurrentMode() {
+        DisplayMode dm = gd.getDisplayMode();
+        System.out.println("Current Display Mode: (" + dm.getWidth() + "," + dm.getHeight() + "," + dm.getBitDepth()
+                + "," + dm.getRefreshRate() + ")  ");
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.silenzz.flash2d;
+
+import java.awt.Rectangle;
+
+/**
+ * The parts of the screen that changed since the last frame and have to be
+ * repainted. Game objects mark what they change (old and new positions),
+ * the frame repaints only those regions and then clears them.
+ * 
+ * Regions are clipped to the screen and a new region touching an existing
+ * one is merged into it, so a worm moving one dot at a time stays a couple
+ * of small rectangles. Past MAX_REGIONS, or after markAll(), the whole screen
+ * is repainted instead. Game thread only.
+ */
+public class DirtyRegions {
+    
+    private static final int MAX_REGIONS = 32;
+    
+    private int width;
+    private int height;
+    
+    // regions as [min, max) corners
+    private int[] minX = new int[MAX_REGIONS];
+    private int[] minY = new int[MAX_REGIONS];
+    private int[] maxX = new int[MAX_REGIONS];
+    private int[] maxY = new int[MAX_REGIONS];
+    private int size;
+    private boolean all;
+    
+    public DirtyRegions(int width, int height) {
+        this.width = width;
+        this.height = height;
+        all = true; // nothing has been painted yet
+    }
+    
+    public void mark(int x, int y, int w, int h) {
+        if (all) {
+            return;
+        }
+        int x1 = Math.max(x, 0);
+        int y1 = Math.max(y, 0);
+        int x2 = Math.min(x + w, width);
+        int y2 = Math.min(y + h, height);
+        if (x1 >= x2 || y1 >= y2) {
+            return; // off screen
+        }
+        
+        for (int i = 0; i < size; i++) {
+            if (x1 <= maxX[i] && minX[i] <= x2 && y1 <= maxY[i] && minY[i] <= y2) {
+                minX[i] = Math.min(minX[i], x1);
+                minY[i] = Math.min(minY[i], y1);
+                maxX[i] = Math.max(maxX[i], x2);
+                maxY[i] = Math.max(maxY[i], y2);
+                return;
+            }
+        }
+        
+        if (size == MAX_REGIONS) {
+            markAll();
+            return;
+        }
+        minX[size] = x1;
+        minY[size] = y1;
+        maxX[size] = x2;
+        maxY[size] = y2;
+        size++;
+    }
+    
+    public void mark(Rectangle r) {
+        mark(r.x, r.y, r.width, r.height);
+    }
+    
+    /**
+     * repaint the whole screen in the next frame
+     */
+    public void markAll() {
+        all = true;
+        size = 0;
+    }
+    
+    public boolean isAll() {
+        return all;
+    }
+    
+    public boolean isEmpty() {
+        return !all && size == 0;
+    }
+    
+    /**
+     * number of regions, meaningless when isAll()
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * store the i-th region in r
+     */
+    public void getRegion(int i, Rectangle r) {
+        r.setBounds(minX[i], minY[i], maxX[i] - minX[i], maxY[i] - minY[i]);
+    }
+    
+    /**
+     * called once the regions have been repainted
+     */
+    public void clear() {
+        all = false;
+        size = 0;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+
+}
@@ -4,8 +4,18 @@ import com.silenzz.flash2d.worm.WormChase;
 
 public class Flash2DMain {
     
+    /**
+     * Usage: Flash2DMain [variable | fixed_timestep | pipelined] [fps [ups]]
+     * 
+     * fps and ups default to 60, ups to fps when only fps is given; e.g.
+     * "fixed_timestep 120 30" renders at 120 FPS a worm moving 30 times
+     * per second.
+     */
     public static void main(String[] args) {
-        WormChase frame = new WormChase();
+        GameLoop.Mode mode = args.length > 0 ? GameLoop.Mode.valueOf(args[0].toUpperCase()) : GameLoop.Mode.VARIABLE;
+        int fps = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int ups = args.length > 2 ? Integer.parseInt(args[2]) : fps;
+        WormChase frame = new WormChase(mode, fps, ups);
     }
 
 }
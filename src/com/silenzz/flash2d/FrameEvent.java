@@ -0,0 +1,52 @@
+package com.silenzz.flash2d;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event spanning one iteration of the {@link GameLoop}, from the first
+ * update to the end of the sleep, so frame stalls can be lined up with GC
+ * pauses and safepoints in JMC.
+ * 
+ * The loop creates one per frame and only fills it in when shouldCommit()
+ * says a recording wants it; with no recording the JIT removes the
+ * allocation and the checks cost next to nothing.
+ */
+@Name("com.silenzz.flash2d.Frame")
+@Label("Frame")
+@Category({ "Flash2D", "Game Loop" })
+@Description("One iteration of the game loop")
+@StackTrace(false)
+class FrameEvent extends Event {
+    
+    @Label("Updates")
+    @Description("Number of updates in this frame")
+    int updates;
+    
+    @Label("Frames Skipped")
+    @Description("Updates beyond the first one, each a frame that was not rendered")
+    int skips;
+    
+    @Label("Update Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long updateTime;
+    
+    @Label("Render Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long renderTime;
+    
+    @Label("Sleep Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long sleepTime;
+    
+    @Label("Oversleep Time")
+    @Description("Time slept beyond what was asked for")
+    @Timespan(Timespan.NANOSECONDS)
+    long oversleepTime;
+
+}
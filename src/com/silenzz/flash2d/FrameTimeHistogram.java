@@ -0,0 +1,127 @@
+package com.silenzz.flash2d;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with logarithmic buckets, in the
+ * spirit of HdrHistogram: every power of 2 is split in SUB_BUCKETS linear
+ * sub-buckets, so any value is kept with a relative error under 1/SUB_BUCKETS
+ * (about 3%) in a fixed amount of memory.
+ * 
+ * Recording is O(1) and never allocates; percentile queries walk the
+ * buckets. Not thread safe, meant to be recorded and read by the game thread.
+ */
+public class FrameTimeHistogram {
+    
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40; // 2^40 ns, about 18 minutes
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    
+    private long[] counts = new long[NUM_BUCKETS];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+    private double sumOfSquares;
+    
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+        sum += value;
+        sumOfSquares += (double) value * value;
+    }
+    
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0.0;
+        sumOfSquares = 0.0;
+    }
+    
+    /**
+     * @param percentile between 0 and 100
+     * @return the value at or below which the given percentage of the
+     *      recorded values fall, rounded up to its bucket's upper bound
+     *      but never above the maximum; 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(percentile / 100.0 * totalCount);
+        if (target < 1) {
+            target = 1;
+        }
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            count += counts[i];
+            if (count >= target) {
+                return Math.min(highestValueInBucket(i), max);
+            }
+        }
+        return max;
+    }
+    
+    public long getTotalCount() {
+        return totalCount;
+    }
+    
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+    
+    public long getMax() {
+        return max;
+    }
+    
+    public double getMean() {
+        return totalCount == 0 ? 0.0 : sum / totalCount;
+    }
+    
+    public double getStdDeviation() {
+        if (totalCount == 0) {
+            return 0.0;
+        }
+        double mean = sum / totalCount;
+        return Math.sqrt(Math.max(0.0, sumOfSquares / totalCount - mean * mean));
+    }
+    
+    /**
+     * Values under SUB_BUCKETS get a bucket each; above that, the bucket is
+     * given by the position of the highest bit and the SUB_BUCKET_BITS bits
+     * following it.
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+    
+    private static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+}
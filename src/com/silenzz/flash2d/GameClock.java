@@ -0,0 +1,15 @@
+package com.silenzz.flash2d;
+
+/**
+ * Time source of a {@link GameLoop}, in nanoseconds.
+ */
+public interface GameClock {
+    
+    /**
+     * the wall clock, {@code System.nanoTime()}
+     */
+    GameClock SYSTEM = System::nanoTime;
+    
+    long nanoTime();
+
+}
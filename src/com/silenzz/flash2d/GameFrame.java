@@ -1,39 +1,102 @@
 package com.silenzz.flash2d;
 
-import java.awt.BufferCapabilities;
-import java.awt.DisplayMode;
-import java.awt.EventQueue;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
-import java.awt.GraphicsDevice;
-import java.awt.GraphicsEnvironment;
-import java.awt.ImageCapabilities;
-import java.awt.Toolkit;
-import java.awt.Window;
-import java.awt.image.BufferStrategy;
-
-import javax.swing.JFrame;
-
-public class GameFrame extends JFrame implements GameStateListener {
-
-    private static final int NUM_BUFFERS = 2;
-
-    // used for full-screen exclusive mode
-    private GraphicsDevice gd;
-    private Graphics gScr;
-    private BufferStrategy bufferStrategy;
+import java.awt.Rectangle;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.VolatileImage;
+import java.io.IOException;
+
+/**
+ * Base class for games, drawn with active rendering into a
+ * {@link RenderTarget}: by default a full-screen window.
+ */
+public class GameFrame implements InterpolatedGameStateListener {
+
+    private static final int MAX_INPUT_EVENTS = 4096;
+
+    // where the frames go
+    protected RenderTarget target;
+    
+    // dirty-region rendering: the scene is kept between frames and only
+    // the dirty regions are repainted, then it is copied to the screen;
+    // targets that keep their contents are repainted directly
+    private boolean dirtyRendering;
+    private VolatileImage scene;
+    private Rectangle region = new Rectangle();
+    protected DirtyRegions dirty;
+    
+    // input captured on the EDT, consumed by the game thread
+    private InputQueue inputQueue;
+    private InputBatch input;
+    
+    // the input of every update is logged by the recorder, or taken from
+    // the replay instead of the listeners
+    private long tick;
+    private SessionRecorder recorder;
+    private SessionReplay replay;
 
     protected GameLoop gameLoop;
     protected int width;
     protected int height;
+    
+    /**
+     * how far to draw moving things between their state before the last
+     * update (0) and after it (1); below 1 only when the loop runs with a
+     * fixed timestep and the frame falls between two updates
+     */
+    protected double interpolation = 1;
 
     public GameFrame(String title, int fps) {
-        super(title);
-        initFullScreen();
-        gameLoop = new GameLoop(fps, this);
+        this(new BufferStrategyTarget(title), fps, fps, GameLoop.Mode.VARIABLE);
+        gameLoop.start();
+    }
+    
+    /**
+     * Run the game with a fixed timestep: updated ups times per second
+     * and rendered fps times per second.
+     */
+    public GameFrame(String title, int fps, int ups) {
+        this(new BufferStrategyTarget(title), fps, ups, GameLoop.Mode.FIXED_TIMESTEP);
+        gameLoop.start();
+    }
+    
+    /**
+     * Run the game full screen with the given loop strategy.
+     */
+    public GameFrame(String title, int fps, int ups, GameLoop.Mode mode) {
+        this(new BufferStrategyTarget(title), fps, ups, mode);
         gameLoop.start();
     }
     
+    /**
+     * Draw the game into the given target. The loop is not started: start()
+     * it, or run() it on the calling thread.
+     */
+    public GameFrame(RenderTarget target, int fps, int ups, GameLoop.Mode mode) {
+        this(target, fps, ups, mode, GameClock.SYSTEM);
+    }
+    
+    /**
+     * Draw the game into the given target, with the loop timed by clock,
+     * e.g. a {@link SimulatedClock} to replay a session headless.
+     */
+    public GameFrame(RenderTarget target, int fps, int ups, GameLoop.Mode mode, GameClock clock) {
+        this.target = target;
+        width = target.getWidth();
+        height = target.getHeight();
+        dirty = new DirtyRegions(width, height);
+        initInput();
+        gameLoop = new GameLoop(fps, ups, this, mode, clock);
+    }
+    
     @Override
     public void start() {
         // TODO Auto-generated method stub
@@ -41,217 +104,308 @@ public class GameFrame extends JFrame implements GameStateListener {
 
     @Override
     public void update() {
+        if (replay != null) {
+            if (!replayInput()) {
+                gameLoop.stop(); // the session is over
+                return;
+            }
+        } else {
+            inputQueue.drainTo(input);
+            if (recorder != null) {
+                recordInput();
+            }
+        }
+        processInput(input);
         updateGame();
+        tick++;
     }
 
     @Override
     public void render() {
+        interpolation = 1;
+        screenUpdate();
+    }
+    
+    @Override
+    public void render(double alpha) {
+        interpolation = alpha;
         screenUpdate();
     }
 
     @Override
     public void finish() {
-        restoreScreen();
-        System.exit(0);
+        closeSession();
+        target.dispose();
+        if (target.getComponent() != null) {
+            System.exit(0); // the AWT threads would keep running
+        }
+    }
+    
+    public GameLoop getGameLoop() {
+        return gameLoop;
+    }
+    
+    public RenderTarget getRenderTarget() {
+        return target;
+    }
+    
+    /**
+     * number of updates so far, the game time in update periods
+     */
+    public long getTick() {
+        return tick;
+    }
+    
+    /**
+     * Go on from another tick, e.g. that of a restored game. Game thread
+     * only.
+     */
+    protected void setTick(long tick) {
+        this.tick = tick;
+    }
+    
+    /**
+     * Log the input of every update from now on, closing the log when the
+     * game finishes. Called before the loop starts or from the game thread.
+     */
+    public void recordSession(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    /**
+     * Take the input of every update from replay instead of the target's
+     * listeners, and stop the loop once the session is over. The game must
+     * not use the wall clock, e.g. for its score, for a replay to go as the
+     * session did. Called before the loop starts.
+     */
+    public void replaySession(SessionReplay replay) {
+        this.replay = replay;
+    }
+    
+    public boolean isRecording() {
+        return recorder != null;
+    }
+    
+    public boolean isReplaying() {
+        return replay != null;
+    }
+    
+    public FontMetrics getFontMetrics(Font font) {
+        Component component = target.getComponent();
+        if (component != null) {
+            return component.getFontMetrics(font);
+        }
+        Graphics2D g = target.getDrawGraphics();
+        FontMetrics metrics = g.getFontMetrics(font);
+        g.dispose();
+        return metrics;
+    }
+    
+    /**
+     * Queue an input event for the next update, as the listeners on the
+     * target's component do; for targets without one.
+     * 
+     * @param type the AWT event id, e.g. MouseEvent.MOUSE_PRESSED
+     */
+    public void postInput(int type, int x, int y, int keyCode, int modifiers) {
+        inputQueue.post(type, x, y, keyCode, modifiers);
+    }
+    
+    /**
+     * Handle the input events captured since the last update, called on the
+     * game thread just before updateGame().
+     */
+    protected void processInput(InputBatch input) {
+        // TODO Abstracto
     }
     
     public void updateGame() {
         // TODO Abstracto
     }
     
+    /**
+     * Draw the game. With dirty-region rendering this is called once per
+     * dirty region with the clip set to it, and must repaint everything
+     * inside the clip, background included.
+     */
     public void renderGame(Graphics gScr) {
         // TODO Abstracto
     }
-
-    private void initFullScreen() {
-        GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        gd = ge.getDefaultScreenDevice();
-
-        setUndecorated(true); // no menu bar, borders, etc. or Swing components
-        setIgnoreRepaint(true); // turn off all paint events since doing active rendering
-        setResizable(false);
-
-        if (!gd.isFullScreenSupported()) {
-            System.out.println("Full-screen exclusive mode not supported");
-            System.exit(0);
-        }
-        gd.setFullScreenWindow(this); // switch on full-screen exclusive mode
-
-        // we can now adjust the display modes, if we wish
-        showCurrentMode();
-
-        // setDisplayMode(800, 600, 8); // or try 8 bits
-        // setDisplayMode(1280, 1024, 32);
-
-        reportCapabilities();
-
-        width = getBounds().width;
-        height = getBounds().height;
-
-        setBufferStrategy();
-    }
     
-    private void reportCapabilities() {
-        GraphicsConfiguration gc = gd.getDefaultConfiguration();
-
-        // Image Capabilities
-        ImageCapabilities imageCaps = gc.getImageCapabilities();
-        System.out.println("Image Caps. isAccelerated: " + imageCaps.isAccelerated());
-        System.out.println("Image Caps. isTrueVolatile: " + imageCaps.isTrueVolatile());
-
-        // Buffer Capabilities
-        BufferCapabilities bufferCaps = gc.getBufferCapabilities();
-        System.out.println("Buffer Caps. isPageFlipping: " + bufferCaps.isPageFlipping());
-        System.out.println("Buffer Caps. Flip Contents: " + getFlipText(bufferCaps.getFlipContents()));
-        System.out.println("Buffer Caps. Full-screen Required: " + bufferCaps.isFullScreenRequired());
-        System.out.println("Buffer Caps. MultiBuffers: " + bufferCaps.isMultiBufferAvailable());
-    }
-    
-    private String getFlipText(BufferCapabilities.FlipContents flip) {
-        if (flip == null) {
-            return "false";
-        } else if (flip == BufferCapabilities.FlipContents.UNDEFINED) {
-            return "Undefined";
-        } else if (flip == BufferCapabilities.FlipContents.BACKGROUND) {
-            return "Background";
-        } else if (flip == BufferCapabilities.FlipContents.PRIOR) {
-            return "Prior";
-        } else { // if (flip == BufferCapabilities.FlipContents.COPIED)
-            return "Copied";
-        }
+    /**
+     * Called before every frame is drawn, e.g. to take the state to draw
+     * when the loop is {@link GameLoop.Mode#PIPELINED}. Does nothing by
+     * default.
+     */
+    protected void prepareFrame() {
     }
-
+    
     /**
-     * Switch on page flipping: NUM_BUFFERS == 2 so there will be a 'primary
-     * surface' and one 'back buffer'.
-     * 
-     * The use of invokeAndWait() is to avoid a possible deadlock with the event
-     * dispatcher thread. Should be fixed in J2SE 1.5
-     * 
-     * createBufferStrategy) is an asynchronous operation, so sleep a bit so that
-     * the getBufferStrategy() call will get the correct details.
+     * Called before every frame with dirty-region rendering, after
+     * prepareFrame(), to mark what changes from frame to frame rather than
+     * from update to update (e.g. a HUD showing the frame count). Does
+     * nothing by default.
      */
-    private void setBufferStrategy() {
-        try {
-            EventQueue.invokeAndWait(new Runnable() {
-                public void run() {
-                    createBufferStrategy(NUM_BUFFERS);
-                }
-            });
-        } catch (Exception e) {
-            System.out.println("Error while creating buffer strategy");
-            System.exit(0);
-        }
-
-        try { // sleep to give time for the buffer strategy to be carried out
-            Thread.sleep(500); // 0.5 sec
-        } catch (InterruptedException ex) {
-        }
-
-        bufferStrategy = getBufferStrategy();
+    protected void markDirtyRegions() {
     }
     
     /**
-     * use active rendering
+     * Switch dirty-region rendering on or off. When on, the game must
+     * mark in {@link #dirty} every change it makes to the screen.
      */
-    private void screenUpdate() {
-        try {
-            gScr = bufferStrategy.getDrawGraphics();
-            renderGame(gScr);
-            gScr.dispose();
-            if (!bufferStrategy.contentsLost()) {
-                bufferStrategy.show();
-            } else {
-                System.out.println("Contents Lost");
-            }
-            // Sync the display on some systems.
-            // (on Linux, this fixes event queue problems)
-            Toolkit.getDefaultToolkit().sync();
-        } catch (Exception e) {
-            e.printStackTrace();
-            gameLoop.stop();
-        }
+    public void setDirtyRendering(boolean dirtyRendering) {
+        this.dirtyRendering = dirtyRendering;
+        dirty.markAll();
+    }
+    
+    public boolean isDirtyRendering() {
+        return dirtyRendering;
     }
 
     /**
-     * Switch off full screen mode. This also resets the display mode if it's been
-     * changed.
+     * The AWT listeners only record events, so game state is never
+     * touched from the EDT.
      */
-    private void restoreScreen() {
-        Window w = gd.getFullScreenWindow();
-        if (w != null) {
-            w.dispose();
+    private void initInput() {
+        inputQueue = new InputQueue(MAX_INPUT_EVENTS);
+        input = new InputBatch(inputQueue.capacity());
+        
+        Component component = target.getComponent();
+        if (component == null) {
+            return;
         }
-        gd.setFullScreenWindow(null);
+        MouseAdapter mouse = new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                postMouse(e);
+            }
+            public void mouseMoved(MouseEvent e) {
+                postMouse(e);
+            }
+            public void mouseDragged(MouseEvent e) {
+                postMouse(e);
+            }
+        };
+        component.addMouseListener(mouse);
+        component.addMouseMotionListener(mouse);
+        component.addKeyListener(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                inputQueue.post(e.getID(), 0, 0, e.getKeyCode(), e.getModifiersEx());
+            }
+        });
+    }
+    
+    private void postMouse(MouseEvent e) {
+        inputQueue.post(e.getID(), e.getX(), e.getY(), 0, e.getModifiersEx());
     }
     
     /**
-     * attempt to set the display mode to the given width, height, and bit depth
+     * A failing log is dropped, the game goes on without it.
      */
-    private void setDisplayMode(int width, int height, int bitDepth) {
-        if (!gd.isDisplayChangeSupported()) {
-            System.out.println("Display mode changing not supported");
-            return;
-        }
-
-        if (!isDisplayModeAvailable(width, height, bitDepth)) {
-            System.out.println("Display mode (" + width + "," + height + "," + bitDepth + ") not available");
-            return;
+    private void recordInput() {
+        try {
+            recorder.record(tick, input);
+        } catch (IOException e) {
+            e.printStackTrace();
+            recorder = null;
         }
-
-        DisplayMode dm = new DisplayMode(width, height, bitDepth, DisplayMode.REFRESH_RATE_UNKNOWN); // any refresh rate
+    }
+    
+    private boolean replayInput() {
         try {
-            gd.setDisplayMode(dm);
-            System.out.println("Display mode set to: (" + width + "," + height + "," + bitDepth + ")");
-        } catch (IllegalArgumentException e) {
-            System.out.println("Error setting Display mode (" + width + "," + height + "," + bitDepth + ")");
+            return replay.next(tick, input);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
         }
-
-        try { // sleep to give time for the display to be changed
-            Thread.sleep(1000); // 1 sec
-        } catch (InterruptedException ex) {
+    }
+    
+    private void closeSession() {
+        try {
+            if (recorder != null) {
+                recorder.close();
+            }
+            if (replay != null) {
+                replay.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
     /**
-     * Check that a displayMode with this width, height, bit depth is available. We
-     * don't care about the refresh rate, which is probably REFRESH_RATE_UNKNOWN
-     * anyway.
+     * use active rendering
      */
-    private boolean isDisplayModeAvailable(int width, int height, int bitDepth) {
-        DisplayMode[] modes = gd.getDisplayModes();
-        showModes(modes);
-
-        for (int i = 0; i < modes.length; i++) {
-            if (width == modes[i].getWidth() && height == modes[i].getHeight() && bitDepth == modes[i].getBitDepth()) {
-                return true;
+    private void screenUpdate() {
+        try {
+            prepareFrame();
+            Graphics2D gScr = target.getDrawGraphics();
+            if (dirtyRendering) {
+                markDirtyRegions();
+                if (target.isPersistent()) {
+                    renderRegions(gScr);
+                    dirty.clear();
+                } else {
+                    renderScene();
+                    gScr.drawImage(scene, 0, 0, null);
+                }
+            } else {
+                renderGame(gScr);
             }
+            gScr.dispose();
+            
+            GameStats stats = gameLoop.getStats();
+            boolean timing = stats.isPhaseTimingEnabled();
+            long presentTime = timing ? gameLoop.getTime() : 0;
+            target.show();
+            if (timing) {
+                stats.recordPhase(GameStats.Phase.PRESENT, gameLoop.getTime() - presentTime);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            gameLoop.stop();
         }
-        return false;
     }
 
     /**
-     * pretty print the display mode information in modes
+     * Repaint the dirty regions of the scene, or all of it when its
+     * contents have been lost (e.g. after switching away from full-screen
+     * mode), in which case the VolatileImage is validated or recreated.
      */
-    private void showModes(DisplayMode[] modes) {
-        System.out.println("Modes");
-        for (int i = 0; i < modes.length; i++) {
-            System.out.print("(" + modes[i].getWidth() + "," + modes[i].getHeight() + "," + modes[i].getBitDepth() + ","
-                    + modes[i].getRefreshRate() + ")  ");
-            if ((i + 1) % 4 == 0) {
-                System.out.println();
+    private void renderScene() {
+        GraphicsConfiguration gc = target.getGraphicsConfiguration();
+        int valid = scene == null ? VolatileImage.IMAGE_INCOMPATIBLE : scene.validate(gc);
+        if (valid == VolatileImage.IMAGE_INCOMPATIBLE) {
+            if (scene != null) {
+                scene.flush();
             }
+            scene = gc.createCompatibleVolatileImage(width, height);
+            dirty.markAll();
+        } else if (valid == VolatileImage.IMAGE_RESTORED) {
+            dirty.markAll();
+        }
+        
+        Graphics2D g = scene.createGraphics();
+        renderRegions(g);
+        g.dispose();
+        
+        if (scene.contentsLost()) {
+            dirty.markAll(); // try again next frame
+        } else {
+            dirty.clear();
         }
-        System.out.println();
     }
-
-    /**
-     * print the display mode details for the graphics device
-     */
-    private void showCurrentMode() {
-        DisplayMode dm = gd.getDisplayMode();
-        System.out.println("Current Display Mode: (" + dm.getWidth() + "," + dm.getHeight() + "," + dm.getBitDepth()
-                + "," + dm.getRefreshRate() + ")  ");
+    
+    private void renderRegions(Graphics2D g) {
+        if (dirty.isAll()) {
+            g.setClip(0, 0, width, height);
+            renderGame(g);
+        } else {
+            for (int i = 0; i < dirty.size(); i++) {
+                dirty.getRegion(i, region);
+                g.setClip(region);
+                renderGame(g);
+            }
+        }
     }
 
 }
@@ -1,7 +1,41 @@
 package com.silenzz.flash2d;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.silenzz.flash2d.GameStats.Phase;
+
 public class GameLoop implements Runnable {
     
+    /**
+     * Loop strategies supported by {@link #run()}.
+     */
+    public enum Mode {
+        /** 
+         * update and render once per period, sleeping in whole milliseconds
+         * and catching up with extra updates when running late
+         */
+        VARIABLE,
+        /** 
+         * update at a fixed rate from a time accumulator and render at the
+         * frame rate, passing the interpolation alpha to the listener
+         */
+        FIXED_TIMESTEP,
+        /**
+         * update as fast as possible without sleeping, rendering only every
+         * renderInterval ticks (or never), for running without a display
+         */
+        HEADLESS,
+        /**
+         * update at a fixed rate on a thread of its own while the loop's
+         * thread renders at the frame rate, so a slow frame does not hold
+         * back the simulation; update() and render() then run at the same
+         * time, and render() must only read state that update() publishes
+         * for it, e.g. through a {@link TripleBuffer}
+         */
+        PIPELINED
+    }
+    
     /** 
      * Number of frames with a delay of 0 ms before the 
      * animation thread yields to other running threads
@@ -14,6 +48,13 @@ public class GameLoop implements Runnable {
      */
     private static final int MAX_FRAME_SKIP = 5;
     
+    /**
+     * Time left before a deadline under which the loop stops parking
+     * and yield-spins instead, since parkNanos() may oversleep by up to
+     * a scheduler tick
+     */
+    private static final long SPIN_THRESHOLD = 1_000_000L; // 1 ms
+    
     public static final long MILLISECONDS = 1000;
     public static final long MICROSECONDS = MILLISECONDS * 1000;
     public static final long NANOSECONDS = MICROSECONDS * 1000;
@@ -23,20 +64,81 @@ public class GameLoop implements Runnable {
     private volatile boolean pause;
     private int fps;
     private long period;
+    private int ups;
+    private long updatePeriod;
+    private Mode mode;
+    private GameClock clock;
     private GameStateListener gameState;
     private GameStats stats;
     
     private boolean finishedOff;
     
+    // time spent in the current frame, only measured when timing
+    private boolean timing;
+    private long frameUpdateTime;
+    private long frameRenderTime;
+    private long frameSleepTime;
+    private long frameOversleepTime;
+    
+    // headless mode
+    private long maxTicks; // 0 means until stopped
+    private int renderInterval; // 0 means never render
+    private volatile long ticks;
+    
+    // pipelined mode, updates done on the update thread since the last
+    // frame and the time they took
+    private AtomicLong pipelinedUpdates = new AtomicLong();
+    private AtomicLong pipelinedUpdateTime = new AtomicLong();
+    
     public GameLoop(int fps, GameStateListener gameState) {
+        this(fps, fps, gameState, Mode.VARIABLE);
+    }
+    
+    /**
+     * @param fps frames rendered per second
+     * @param ups updates per second, only used apart from fps in
+     *      {@link Mode#FIXED_TIMESTEP} and {@link Mode#PIPELINED}
+     * @param gameState the game driven by this loop
+     * @param mode the loop strategy
+     */
+    public GameLoop(int fps, int ups, GameStateListener gameState, Mode mode) {
+        this(fps, ups, gameState, mode, GameClock.SYSTEM);
+    }
+    
+    /**
+     * @param clock time source for the loop and its stats, usually a
+     *      {@link SimulatedClock} in {@link Mode#HEADLESS}
+     */
+    public GameLoop(int fps, int ups, GameStateListener gameState, Mode mode, GameClock clock) {
         this.fps = fps;
+        this.ups = ups;
         this.gameState = gameState;
+        this.mode = mode;
+        this.clock = clock;
         this.period = NANOSECONDS / fps;
+        this.updatePeriod = NANOSECONDS / ups;
         stats = new GameStats(this);
     }
     
     @Override
     public void run() {
+        switch (mode) {
+        case FIXED_TIMESTEP:
+            runFixedTimestep();
+            break;
+        case HEADLESS:
+            runHeadless();
+            break;
+        case PIPELINED:
+            runPipelined();
+            break;
+        default:
+            runVariable();
+            break;
+        }
+    }
+    
+    private void runVariable() {
         long beforeTime = 0;
         long afterTime = 0;
         long timeDiff = 0;
@@ -45,21 +147,26 @@ public class GameLoop implements Runnable {
         int noDelays = 0;
         long excess = 0;
         
-        beforeTime = System.nanoTime();
+        beforeTime = getTime();
         running = true;
         gameState.start();
         
         while (running) {
-            gameState.update();
-            gameState.render();
+            FrameEvent frame = beginFrame();
+            update();
+            render();
             
-            afterTime = System.nanoTime();
+            afterTime = getTime();
             timeDiff = afterTime - beforeTime;
             sleepTime = (period - timeDiff) - overSleepTime;
             
             if (sleepTime > 0) {
                 sleep(sleepTime / 1_000_000); // nano -> ms
-                overSleepTime = (System.nanoTime() - afterTime) - sleepTime;
+                overSleepTime = (getTime() - afterTime) - sleepTime;
+                if (timing) {
+                    recordPhase(Phase.SLEEP, sleepTime + overSleepTime);
+                    recordPhase(Phase.OVERSLEEP, Math.max(0, overSleepTime));
+                }
             } else {
                 excess -= sleepTime; // store excess time value
                 overSleepTime = 0;
@@ -69,23 +176,318 @@ public class GameLoop implements Runnable {
                 }
             }
             
-            beforeTime = System.nanoTime();
+            beforeTime = getTime();
             
             int skips = 0;
             while((excess > period) && (skips < MAX_FRAME_SKIP)) {
                 excess -= period;
-                gameState.update();
+                update();
                 skips++;
             }
             
-            stats.addFramesSkipped(skips);
+            stats.addUpdates(skips + 1);
+            stats.store();
+            endFrame(frame, skips + 1);
+        }
+        
+        finishOff();
+        gameState.finish();
+    }
+    
+    /**
+     * Fixed-timestep loop. Elapsed time is accumulated and consumed in
+     * steps of updatePeriod, so the game is always advanced by the same
+     * amount regardless of how long rendering took. Whatever is left in
+     * the accumulator is passed to the renderer as a fraction of a step
+     * (alpha) so it can interpolate between the last two states.
+     * 
+     * Frames are paced against absolute deadlines with sleepUntil() instead
+     * of a relative millisecond sleep, so sleeping errors do not add up.
+     */
+    private void runFixedTimestep() {
+        long previousTime = 0;
+        long currentTime = 0;
+        long accumulator = 0;
+        long nextFrameTime = 0;
+        int noDelays = 0;
+        
+        previousTime = getTime();
+        nextFrameTime = previousTime;
+        running = true;
+        gameState.start();
+        
+        while (running) {
+            FrameEvent frame = beginFrame();
+            currentTime = getTime();
+            accumulator += currentTime - previousTime;
+            previousTime = currentTime;
+            
+            // after a long stall drop the backlog instead of trying
+            // to catch up with an endless burst of updates
+            if (accumulator > (MAX_FRAME_SKIP + 1) * updatePeriod) {
+                accumulator = (MAX_FRAME_SKIP + 1) * updatePeriod;
+            }
+            
+            int updates = 0;
+            while (accumulator >= updatePeriod) {
+                update();
+                accumulator -= updatePeriod;
+                updates++;
+            }
+            
+            render((double) accumulator / updatePeriod);
+            
+            stats.addUpdates(updates);
+            stats.store();
+            
+            nextFrameTime += period;
+            if (getTime() - nextFrameTime > period) {
+                // more than a frame behind, resynchronise instead of
+                // rendering a burst of frames back to back
+                nextFrameTime = getTime();
+            }
+            
+            long sleepStart = getTime();
+            if (sleepUntil(nextFrameTime)) {
+                if (timing) {
+                    long wakeTime = getTime();
+                    recordPhase(Phase.SLEEP, wakeTime - sleepStart);
+                    recordPhase(Phase.OVERSLEEP, wakeTime - nextFrameTime);
+                }
+            } else if (++noDelays >= NO_DELAYS_PER_YIELD) {
+                Thread.yield(); // Give another thread chance to run
+                noDelays = 0;
+            }
+            endFrame(frame, updates);
+        }
+        
+        finishOff();
+        gameState.finish();
+    }
+    
+    /**
+     * Unthrottled loop: no sleeping and no frame pacing, each tick is one
+     * update. A SimulatedClock is moved forward by one update period per
+     * tick; with the system clock the stats report the raw throughput.
+     */
+    private void runHeadless() {
+        ticks = 0;
+        running = true;
+        gameState.start();
+        
+        while (running && (maxTicks <= 0 || ticks < maxTicks)) {
+            FrameEvent frame = beginFrame();
+            update();
+            ticks++;
+            
+            if (renderInterval > 0 && ticks % renderInterval == 0) {
+                render();
+            }
+            if (clock instanceof SimulatedClock) {
+                ((SimulatedClock) clock).advance(updatePeriod);
+            }
+            
+            stats.addUpdates(1);
+            stats.store();
+            endFrame(frame, 1);
+        }
+        
+        running = false;
+        finishOff();
+        gameState.finish();
+    }
+    
+    /**
+     * Pipelined loop: a second thread updates the game at the update rate
+     * while this one renders at the frame rate, both paced with
+     * sleepUntil(). The updates done meanwhile are added to the stats of
+     * each frame, which stay on this thread.
+     */
+    private void runPipelined() {
+        long nextFrameTime = 0;
+        int noDelays = 0;
+        
+        nextFrameTime = getTime();
+        running = true;
+        gameState.start();
+        
+        Thread updater = new Thread(this::runUpdates, "updater");
+        updater.start();
+        
+        while (running) {
+            FrameEvent frame = beginFrame();
+            render();
+            
+            int updates = (int) pipelinedUpdates.getAndSet(0);
+            long updateTime = pipelinedUpdateTime.getAndSet(0);
+            if (timing && updates > 0) {
+                recordPhase(Phase.UPDATE, updateTime);
+            }
+            stats.addUpdates(updates);
             stats.store();
+            
+            nextFrameTime += period;
+            if (getTime() - nextFrameTime > period) {
+                nextFrameTime = getTime(); // more than a frame behind
+            }
+            
+            long sleepStart = getTime();
+            if (sleepUntil(nextFrameTime)) {
+                if (timing) {
+                    long wakeTime = getTime();
+                    recordPhase(Phase.SLEEP, wakeTime - sleepStart);
+                    recordPhase(Phase.OVERSLEEP, wakeTime - nextFrameTime);
+                }
+            } else if (++noDelays >= NO_DELAYS_PER_YIELD) {
+                Thread.yield(); // Give another thread chance to run
+                noDelays = 0;
+            }
+            endFrame(frame, updates);
         }
         
+        // finish() must not run while an update still is
+        try {
+            updater.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         finishOff();
         gameState.finish();
     }
     
+    /**
+     * The update thread of the pipelined loop. When late it catches up with
+     * back to back updates, up to MAX_FRAME_SKIP of them, as the fixed
+     * timestep loop does. If an update fails the whole loop stops, rather
+     * than rendering a frozen game forever.
+     */
+    private void runUpdates() {
+        long nextUpdateTime = getTime();
+        try {
+            while (running) {
+                long startTime = getTime();
+                gameState.update();
+                long endTime = getTime();
+                pipelinedUpdateTime.addAndGet(endTime - startTime);
+                pipelinedUpdates.incrementAndGet();
+                
+                nextUpdateTime += updatePeriod;
+                if (endTime - nextUpdateTime > MAX_FRAME_SKIP * updatePeriod) {
+                    nextUpdateTime = endTime; // drop the backlog
+                }
+                if (!sleepUntil(nextUpdateTime)) {
+                    Thread.yield();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            running = false; // the render loop ends and finish() runs
+        }
+    }
+    
+    /**
+     * Start timing a frame. Phases are timed when the stats want them or
+     * when a JFR recording wants the frame event.
+     */
+    private FrameEvent beginFrame() {
+        FrameEvent frame = new FrameEvent();
+        timing = stats.isPhaseTimingEnabled() || frame.isEnabled();
+        frameUpdateTime = 0;
+        frameRenderTime = 0;
+        frameSleepTime = 0;
+        frameOversleepTime = 0;
+        frame.begin();
+        return frame;
+    }
+    
+    private void endFrame(FrameEvent frame, int updates) {
+        if (frame.shouldCommit()) {
+            frame.updates = updates;
+            frame.skips = Math.max(0, updates - 1);
+            frame.updateTime = frameUpdateTime;
+            frame.renderTime = frameRenderTime;
+            frame.sleepTime = frameSleepTime;
+            frame.oversleepTime = frameOversleepTime;
+            frame.commit();
+        }
+    }
+    
+    private void recordPhase(Phase phase, long nanos) {
+        switch (phase) {
+        case UPDATE:
+            frameUpdateTime += nanos;
+            break;
+        case RENDER:
+            frameRenderTime += nanos;
+            break;
+        case SLEEP:
+            frameSleepTime += nanos;
+            break;
+        case OVERSLEEP:
+            frameOversleepTime += nanos;
+            break;
+        default:
+            break;
+        }
+        if (stats.isPhaseTimingEnabled()) {
+            stats.recordPhase(phase, nanos);
+        }
+    }
+    
+    private void update() {
+        if (!timing) {
+            gameState.update();
+            return;
+        }
+        long startTime = getTime();
+        gameState.update();
+        recordPhase(Phase.UPDATE, getTime() - startTime);
+    }
+    
+    private void render() {
+        if (!timing) {
+            gameState.render();
+            return;
+        }
+        long startTime = getTime();
+        gameState.render();
+        recordPhase(Phase.RENDER, getTime() - startTime);
+    }
+    
+    private void render(double alpha) {
+        long startTime = timing ? getTime() : 0;
+        if (gameState instanceof InterpolatedGameStateListener) {
+            ((InterpolatedGameStateListener) gameState).render(alpha);
+        } else {
+            gameState.render();
+        }
+        if (timing) {
+            recordPhase(Phase.RENDER, getTime() - startTime);
+        }
+    }
+    
+    /**
+     * Hybrid wait until deadline: park in coarse slices while more than
+     * SPIN_THRESHOLD remains, then yield-spin through the last slice.
+     * 
+     * @return false if the deadline had already passed
+     */
+    private boolean sleepUntil(long deadline) {
+        long remaining = deadline - getTime();
+        if (remaining <= 0) {
+            return false;
+        }
+        while (remaining > SPIN_THRESHOLD) {
+            LockSupport.parkNanos(remaining - SPIN_THRESHOLD);
+            remaining = deadline - getTime();
+        }
+        while (deadline - getTime() > 0) {
+            Thread.yield();
+        }
+        return true;
+    }
+    
     public GameStats getStats() {
         return stats;
     }
@@ -145,11 +547,11 @@ public class GameLoop implements Runnable {
     
     /**
      * Regresa el tiempo en nano segundos
-     * utilizando {@code System.nanoTime()}
+     * utilizando el {@link GameClock} del loop
      * @return long nano segundos
      */
     public long getTime() {
-        return System.nanoTime();
+        return clock.nanoTime();
     }
     
     public long secondsToMillis(long seconds) {
@@ -176,4 +578,43 @@ public class GameLoop implements Runnable {
         return period;
     }
 
+    public int getUps() {
+        return ups;
+    }
+
+    public long getUpdatePeriod() {
+        return updatePeriod;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public GameClock getClock() {
+        return clock;
+    }
+    
+    /**
+     * Headless mode only: stop after the given number of ticks, 0 to run
+     * until stopped. Must be set before the loop starts.
+     */
+    public void setMaxTicks(long maxTicks) {
+        this.maxTicks = maxTicks;
+    }
+    
+    /**
+     * Headless mode only: render once every renderInterval ticks, 0 to
+     * never render. Must be set before the loop starts.
+     */
+    public void setRenderInterval(int renderInterval) {
+        this.renderInterval = renderInterval;
+    }
+
+    /**
+     * number of ticks run so far in headless mode
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
 }
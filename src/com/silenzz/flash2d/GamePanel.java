@@ -3,8 +3,7 @@ package com.silenzz.flash2d;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.Image;
-import java.awt.Toolkit;
+import java.awt.Graphics2D;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
@@ -20,11 +19,11 @@ public class GamePanel extends JPanel implements GameStateListener {
     private static final int FPS = 120;
     
     private GameLoop gameLoop;
-    private Graphics dbg;
-    private Image dbImage;
+    private PanelTarget target;
     
     public GamePanel() {
         gameLoop = new GameLoop(FPS, this);
+        target = new PanelTarget(this, PWIDTH, PHEIGHT);
         
         setBackground(Color.WHITE);
         setPreferredSize(new Dimension(PWIDTH, PHEIGHT));
@@ -67,20 +66,16 @@ public class GamePanel extends JPanel implements GameStateListener {
     
     @Override
     public void render() {
-        if (dbImage == null) {
-            dbImage = createImage(PWIDTH, PHEIGHT);
-            if (dbImage != null) {
-                dbg = dbImage.getGraphics();
-            } else {
-                System.out.println("dbImage is null");
-                return;
-            }
-        }
-        
+        Graphics2D dbg = target.getDrawGraphics();
         dbg.setColor(Color.BLACK);
         dbg.fillRect(0, 0, PWIDTH, PHEIGHT);
+        dbg.dispose();
         
-        paintScreen();
+        try {
+            target.show();
+        } catch (Exception e) {
+            System.out.println("Graphics context error: " + e);
+        }
     }
     
     @Override
@@ -89,26 +84,10 @@ public class GamePanel extends JPanel implements GameStateListener {
         System.exit(0);
     }
     
-    private void paintScreen() {
-        Graphics g;
-        try {
-            g = getGraphics();
-            if (g != null && dbImage != null) {
-                g.drawImage(dbImage, 0, 0, null);
-            }
-            Toolkit.getDefaultToolkit().sync();
-            g.dispose();
-        } catch (Exception e) {
-            System.out.println("Graphics context error: " + e);
-        }
-    }
-    
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-        if (dbImage != null) {
-            g.drawImage(dbImage, 0, 0, null);
-        }
+        target.paint(g);
     }
 
 }
@@ -1,9 +1,41 @@
 package com.silenzz.flash2d;
 
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 
+/**
+ * Frame and update counters, rates and timings of a GameLoop. They belong
+ * to the thread running the loop, which calls store() after every frame:
+ * in {@link GameLoop.Mode#PIPELINED} mode that is the render thread, not
+ * the one running the updates, so the game must not save or restore its
+ * stats from update().
+ */
 public class GameStats {
     
+    /**
+     * Parts of a frame timed separately. PRESENT is reported by the listener
+     * and is the part of RENDER spent showing the frame on screen.
+     */
+    public enum Phase {
+        UPDATE("Update"),
+        RENDER("Render"),
+        PRESENT("Present"),
+        SLEEP("Sleep"),
+        OVERSLEEP("Oversleep");
+        
+        private String label;
+        
+        private Phase(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    private static final Phase[] PHASES = Phase.values();
+    
     private GameLoop gameLoop;
     
     private long statsInterval; // in ns
@@ -17,10 +49,23 @@ public class GameStats {
     private long statsCount;
     private double averageFPS;
 
+    private long updateCount;
     private long framesSkipped;
     private long totalFramesSkipped;
     private double[] upsStore;
     private double averageUPS;
+    
+    // per-frame durations, for the last complete interval and the
+    // interval being recorded; swapped every MAX_STATS_INTERVAL
+    private FrameTimeHistogram[] phaseTimes = new FrameTimeHistogram[PHASES.length];
+    private FrameTimeHistogram[] nextPhaseTimes = new FrameTimeHistogram[PHASES.length];
+    private FrameTimeHistogram frameTimes = new FrameTimeHistogram();
+    private FrameTimeHistogram nextFrameTimes = new FrameTimeHistogram();
+    private long prevFrameTime;
+    
+    // phase timing costs two clock reads per phase, it can be switched
+    // off at any time with setPhaseTimingEnabled() or -Dflash2d.timing=false
+    private volatile boolean phaseTiming = Boolean.parseBoolean(System.getProperty("flash2d.timing", "true"));
 
     private DecimalFormat df = new DecimalFormat("#,#00"); // 2 dp
     private DecimalFormat timedf = new DecimalFormat("0.####"); // 4 dp
@@ -33,7 +78,12 @@ public class GameStats {
             fpsStore[i] = 0.0;
             upsStore[i] = 0.0;
         }
+        for (int i = 0; i < PHASES.length; i++) {
+            phaseTimes[i] = new FrameTimeHistogram();
+            nextPhaseTimes[i] = new FrameTimeHistogram();
+        }
         gameStartTime = gameLoop.getTime();
+        prevFrameTime = gameStartTime;
     }
     
     /**
@@ -49,14 +99,20 @@ public class GameStats {
      * - the FPS (frames/sec) and UPS (updates/sec) for this interval, the average
      * FPS & UPS over the last NUM_FPSs intervals.
      * 
+     * - the distribution of the time spent in every phase of a frame and of
+     * the frame times (time between calls to store()) in the last interval.
+     * 
      * The data is collected every MAX_STATS_INTERVAL (1 sec).
      */
     public void store() {
+        long timeNow = gameLoop.getTime();
+        nextFrameTimes.record(timeNow - prevFrameTime);
+        prevFrameTime = timeNow;
+        
         frameCount++;
         statsInterval += gameLoop.getPeriod();
 
         if (statsInterval >= GameLoop.NANOSECONDS) { // record stats every MAX_STATS_INTERVAL
-            long timeNow = gameLoop.getTime();
             timeSpentInGame = (int) ((timeNow - gameStartTime) / 1000000000L); // ns --> secs
 
             long realElapsedTime = timeNow - prevStatsTime; // time since last stats collection
@@ -72,7 +128,7 @@ public class GameStats {
                 double elapsedTimeNano = totalElapsedTime - gameStartTime;
                 
                 actualFPS = (((double) frameCount / elapsedTimeNano) * 1000000000L);
-                actualUPS = (((double) (frameCount + totalFramesSkipped) / elapsedTimeNano) * 1000000000L);
+                actualUPS = (((double) updateCount / elapsedTimeNano) * 1000000000L);
             }
 
             // store the latest FPS and UPS
@@ -103,23 +159,214 @@ public class GameStats {
              * df.format(averageUPS) + " aups" );
              */
             
+            swapTimeWindows();
+            
             framesSkipped = 0;
             prevStatsTime = timeNow;
             statsInterval = 0L; // reset
         }
     }
     
+    /**
+     * The interval just recorded becomes the one reported, the
+     * old one is reused for recording.
+     */
+    private void swapTimeWindows() {
+        FrameTimeHistogram[] phases = phaseTimes;
+        phaseTimes = nextPhaseTimes;
+        nextPhaseTimes = phases;
+        for (int i = 0; i < PHASES.length; i++) {
+            nextPhaseTimes[i].reset();
+        }
+        
+        FrameTimeHistogram h = frameTimes;
+        frameTimes = nextFrameTimes;
+        nextFrameTimes = h;
+        nextFrameTimes.reset();
+    }
+    
+    /**
+     * bytes written by saveTo()
+     */
+    public int getCheckpointSize() {
+        return 9 * 8 + 4 + 2 * 8 + 4 + 2 * 8 * fpsStore.length;
+    }
+    
+    /**
+     * Write the counters and averages at the buffer's position. Times are
+     * saved relative to now, so they can be restored under another clock;
+     * the frame time distributions are not saved. Loop thread only.
+     */
+    public void saveTo(ByteBuffer buffer) {
+        long timeNow = gameLoop.getTime();
+        buffer.putLong(frameCount).putLong(updateCount).putLong(framesSkipped).putLong(totalFramesSkipped)
+                .putLong(statsCount).putLong(statsInterval).putLong(totalElapsedTime)
+                .putLong(timeNow - gameStartTime).putLong(timeNow - prevStatsTime);
+        buffer.putInt(timeSpentInGame).putDouble(averageFPS).putDouble(averageUPS);
+        buffer.putInt(fpsStore.length);
+        for (int i = 0; i < fpsStore.length; i++) {
+            buffer.putDouble(fpsStore[i]);
+        }
+        for (int i = 0; i < upsStore.length; i++) {
+            buffer.putDouble(upsStore[i]);
+        }
+    }
+    
+    /**
+     * Can the size bytes at the buffer's position be restored? They must be
+     * as many as saveTo() writes for the number of samples they hold. The
+     * buffer's position is left alone.
+     */
+    public static boolean isValidCheckpoint(ByteBuffer buffer, int size) {
+        int fixedSize = 9 * 8 + 4 + 2 * 8;
+        if (size < fixedSize + 4) {
+            return false;
+        }
+        int samples = buffer.getInt(buffer.position() + fixedSize);
+        return samples >= 0 && fixedSize + 4 + 2 * 8L * samples == size;
+    }
+    
+    /**
+     * Replace the counters and averages with those written by saveTo(),
+     * read at the buffer's position. Loop thread only.
+     */
+    public void restoreFrom(ByteBuffer buffer) {
+        long timeNow = gameLoop.getTime();
+        frameCount = buffer.getLong();
+        updateCount = buffer.getLong();
+        framesSkipped = buffer.getLong();
+        totalFramesSkipped = buffer.getLong();
+        statsCount = buffer.getLong();
+        statsInterval = buffer.getLong();
+        totalElapsedTime = buffer.getLong();
+        gameStartTime = timeNow - buffer.getLong();
+        prevStatsTime = timeNow - buffer.getLong();
+        prevFrameTime = timeNow;
+        timeSpentInGame = buffer.getInt();
+        averageFPS = buffer.getDouble();
+        averageUPS = buffer.getDouble();
+        
+        // saved at another frame rate, the samples that fit are kept
+        int samples = buffer.getInt();
+        for (int i = 0; i < samples; i++) {
+            double fps = buffer.getDouble();
+            if (i < fpsStore.length) {
+                fpsStore[i] = fps;
+            }
+        }
+        for (int i = 0; i < samples; i++) {
+            double ups = buffer.getDouble();
+            if (i < upsStore.length) {
+                upsStore[i] = ups;
+            }
+        }
+    }
+    
     public void print() {
         System.out.println("Frame Count/Loss: " + frameCount + " / " + totalFramesSkipped);
         System.out.println("Average FPS: " + df.format(averageFPS));
         System.out.println("Average UPS: " + df.format(averageUPS));
         System.out.println("Time Spent: " + timeSpentInGame + " secs");
+        if (phaseTiming) {
+            for (Phase phase : PHASES) {
+                printTimes(phase.getLabel(), getPhaseTimes(phase));
+            }
+        }
+        printTimes("Frame", frameTimes);
+        System.out.println("Frame Jitter: " + timedf.format(getJitter() / GameLoop.MICROSECONDS) + " ms");
+    }
+    
+    private void printTimes(String name, FrameTimeHistogram times) {
+        System.out.println(name + " Time p50/p95/p99/max: " 
+                + timedf.format((double) times.getValueAtPercentile(50) / GameLoop.MICROSECONDS) + " / "
+                + timedf.format((double) times.getValueAtPercentile(95) / GameLoop.MICROSECONDS) + " / "
+                + timedf.format((double) times.getValueAtPercentile(99) / GameLoop.MICROSECONDS) + " / "
+                + timedf.format((double) times.getMax() / GameLoop.MICROSECONDS) + " ms");
+    }
+    
+    public boolean isPhaseTimingEnabled() {
+        return phaseTiming;
+    }
+    
+    /**
+     * Switch the timing of frame phases on or off, from any thread.
+     * When off, the loop does not even read the clock for them.
+     */
+    public void setPhaseTimingEnabled(boolean enabled) {
+        phaseTiming = enabled;
+    }
+    
+    /**
+     * Record the time spent in a phase of the current frame; the loop
+     * records every update (including those of skipped frames), render,
+     * sleep and oversleep, the listener records the presenting.
+     * Callers should check isPhaseTimingEnabled() before timing.
+     */
+    public void recordPhase(Phase phase, long nanos) {
+        nextPhaseTimes[phase.ordinal()].record(nanos);
+    }
+    
+    /**
+     * durations (ns) of a phase in the last complete stats interval
+     */
+    public FrameTimeHistogram getPhaseTimes(Phase phase) {
+        return phaseTimes[phase.ordinal()];
+    }
+    
+    /**
+     * update durations (ns) in the last complete stats interval
+     */
+    public FrameTimeHistogram getUpdateTimes() {
+        return getPhaseTimes(Phase.UPDATE);
+    }
+    
+    /**
+     * render durations (ns) in the last complete stats interval
+     */
+    public FrameTimeHistogram getRenderTimes() {
+        return getPhaseTimes(Phase.RENDER);
+    }
+    
+    /**
+     * times between frames (ns) in the last complete stats interval
+     */
+    public FrameTimeHistogram getFrameTimes() {
+        return frameTimes;
+    }
+    
+    /**
+     * @param percentile between 0 and 100
+     * @return the frame time (ns) at the given percentile in the
+     *      last complete stats interval
+     */
+    public long getFrameTime(double percentile) {
+        return frameTimes.getValueAtPercentile(percentile);
+    }
+    
+    /**
+     * standard deviation of the frame times (ns) in the
+     * last complete stats interval
+     */
+    public double getJitter() {
+        return frameTimes.getStdDeviation();
     }
     
     public void addFramesSkipped(int skips) {
         framesSkipped += skips;
     }
     
+    /**
+     * Record the updates done since the last frame. Every update after the
+     * first one counts as a skipped frame; with a fixed timestep a frame may
+     * also have no update at all.
+     */
+    public void addUpdates(int updates) {
+        updateCount += updates;
+        if (updates > 1) {
+            addFramesSkipped(updates - 1);
+        }
+    }
+    
     public String getFrameCountLabel() {
         return "Frame Count " + frameCount;
     }
@@ -136,4 +383,16 @@ public class GameStats {
         return timeSpentInGame;
     }
 
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public double getAverageFps() {
+        return averageFPS;
+    }
+
+    public double getAverageUps() {
+        return averageUPS;
+    }
+
 }
@@ -0,0 +1,190 @@
+package com.silenzz.flash2d;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * A line of HUD text made of fixed parts and numbers, e.g.
+ * "Average FPS/UPS: " 60 " / " 60, kept as characters and as a rendered image.
+ * 
+ * The characters are only rebuilt when one of the numbers changes, in place
+ * and without creating strings, and the image is only redrawn after that;
+ * drawing an unchanged label is a single drawImage(). Game thread only.
+ * 
+ * A label drawn over a plain background should be given its color: the image
+ * is then opaque and drawing it is a straight copy, where blending a
+ * transparent image costs more than drawing the glyphs on software pipelines.
+ */
+public class HudLabel {
+    
+    private static final int MAX_DIGITS = 27; // a long with grouping separators
+    private static final int IMAGE_SLACK = 64; // pixels of room to grow
+    
+    private String[] parts;
+    private long[] values;
+    private boolean grouped;
+    private char groupingSeparator;
+    private Font font;
+    private Color color;
+    private Color background;
+    
+    private char[] text;
+    private int length;
+    private char[] digits = new char[MAX_DIGITS];
+    
+    private boolean stale = true;
+    private FontMetrics metrics;
+    private GraphicsConfiguration imageGc;
+    private BufferedImage image;
+    private Graphics2D imageGraphics;
+    private int textWidth;
+    
+    /**
+     * @param background color behind the text, or null to draw it over
+     *      anything
+     * @param grouped format the numbers with at least 2 digits and grouping
+     *      separators, as {@code new DecimalFormat("#,#00")} does
+     * @param parts the fixed text around the numbers, one more than there
+     *      are numbers ("" where there is nothing)
+     */
+    public HudLabel(Font font, Color color, Color background, boolean grouped, String... parts) {
+        this.font = font;
+        this.color = color;
+        this.background = background;
+        this.grouped = grouped;
+        this.parts = parts;
+        groupingSeparator = DecimalFormatSymbols.getInstance().getGroupingSeparator();
+        
+        values = new long[parts.length - 1];
+        int capacity = 0;
+        for (String part : parts) {
+            capacity += part.length();
+        }
+        text = new char[capacity + values.length * MAX_DIGITS];
+        rebuild();
+    }
+    
+    /**
+     * @return true if the label changed
+     */
+    public boolean set(long value) {
+        if (values[0] == value) {
+            return false;
+        }
+        values[0] = value;
+        rebuild();
+        return true;
+    }
+    
+    /**
+     * @return true if the label changed
+     */
+    public boolean set(long value1, long value2) {
+        if (values[0] == value1 && values[1] == value2) {
+            return false;
+        }
+        values[0] = value1;
+        values[1] = value2;
+        rebuild();
+        return true;
+    }
+    
+    /**
+     * Draw the label with its baseline starting at (x,y).
+     */
+    public void draw(Graphics2D g, int x, int y) {
+        GraphicsConfiguration gc = g.getDeviceConfiguration();
+        if (metrics == null) {
+            metrics = g.getFontMetrics(font);
+        }
+        if (stale || gc != imageGc) {
+            renderImage(gc);
+        }
+        int top = y - metrics.getAscent();
+        int height = metrics.getAscent() + metrics.getDescent();
+        g.drawImage(image, x, top, x + textWidth, top + height, 0, 0, textWidth, height, null);
+    }
+    
+    public int length() {
+        return length;
+    }
+    
+    public char charAt(int i) {
+        return text[i];
+    }
+    
+    @Override
+    public String toString() {
+        return new String(text, 0, length);
+    }
+    
+    private void rebuild() {
+        length = 0;
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            part.getChars(0, part.length(), text, length);
+            length += part.length();
+            if (i < values.length) {
+                appendNumber(values[i]);
+            }
+        }
+        stale = true;
+    }
+    
+    /**
+     * Write the digits backwards into digits[], then copy them.
+     */
+    private void appendNumber(long value) {
+        boolean negative = value < 0;
+        int pos = digits.length;
+        int count = 0;
+        do {
+            if (grouped && count > 0 && count % 3 == 0) {
+                digits[--pos] = groupingSeparator;
+            }
+            digits[--pos] = (char) ('0' + Math.abs(value % 10));
+            value /= 10;
+            count++;
+        } while (value != 0 || (grouped && count < 2));
+        if (negative) {
+            digits[--pos] = '-';
+        }
+        System.arraycopy(digits, pos, text, length, digits.length - pos);
+        length += digits.length - pos;
+    }
+    
+    private void renderImage(GraphicsConfiguration gc) {
+        textWidth = metrics.charsWidth(text, 0, length);
+        int height = metrics.getAscent() + metrics.getDescent();
+        if (image == null || gc != imageGc || image.getWidth() < textWidth || image.getHeight() < height) {
+            if (imageGraphics != null) {
+                imageGraphics.dispose();
+            }
+            int transparency = background == null ? Transparency.TRANSLUCENT : Transparency.OPAQUE;
+            image = gc.createCompatibleImage(Math.max(1, textWidth + IMAGE_SLACK), height, transparency);
+            imageGraphics = image.createGraphics();
+            imageGraphics.setFont(font);
+            imageGc = gc;
+        }
+        
+        if (background == null) {
+            imageGraphics.setComposite(AlphaComposite.Clear);
+            imageGraphics.fillRect(0, 0, textWidth, height);
+            imageGraphics.setComposite(AlphaComposite.SrcOver);
+        } else {
+            imageGraphics.setColor(background);
+            imageGraphics.fillRect(0, 0, textWidth, height);
+        }
+        imageGraphics.setColor(color);
+        imageGraphics.drawChars(text, 0, length, 0, metrics.getAscent());
+        stale = false;
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.silenzz.flash2d;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+
+/**
+ * An offscreen BufferedImage, for running games without a display (e.g.
+ * with java.awt.headless=true) to benchmark rendering or to compare the
+ * frames drawn with known good ones.
+ */
+public class ImageTarget implements RenderTarget {
+    
+    private BufferedImage image;
+    private GraphicsConfiguration gc;
+    private long framesShown;
+    
+    public ImageTarget(int width, int height) {
+        this(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    }
+    
+    public ImageTarget(BufferedImage image) {
+        this.image = image;
+        Graphics2D g = image.createGraphics();
+        gc = g.getDeviceConfiguration();
+        g.dispose();
+    }
+    
+    @Override
+    public int getWidth() {
+        return image.getWidth();
+    }
+    
+    @Override
+    public int getHeight() {
+        return image.getHeight();
+    }
+    
+    @Override
+    public GraphicsConfiguration getGraphicsConfiguration() {
+        return gc;
+    }
+    
+    @Override
+    public Component getComponent() {
+        return null;
+    }
+    
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+    
+    @Override
+    public Graphics2D getDrawGraphics() {
+        return image.createGraphics();
+    }
+    
+    @Override
+    public boolean show() {
+        framesShown++;
+        return true;
+    }
+    
+    @Override
+    public void dispose() {
+        image.flush();
+    }
+    
+    /**
+     * The last frame drawn.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+    
+    public long getFramesShown() {
+        return framesShown;
+    }
+
+}
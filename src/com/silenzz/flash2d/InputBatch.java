@@ -0,0 +1,69 @@
+package com.silenzz.flash2d;
+
+/**
+ * The input events captured since the previous update, handed to the game
+ * thread all at once. Events are primitive records read by index; the type
+ * of an event is its AWT id, e.g. {@code MouseEvent.MOUSE_PRESSED} or
+ * {@code KeyEvent.KEY_PRESSED}.
+ * 
+ * The arrays are allocated once and refilled every tick, so an index is only
+ * valid until the next update.
+ */
+public class InputBatch {
+    
+    int[] type;
+    int[] x;
+    int[] y;
+    int[] keyCode;
+    int[] modifiers;
+    int size;
+    
+    public InputBatch(int capacity) {
+        type = new int[capacity];
+        x = new int[capacity];
+        y = new int[capacity];
+        keyCode = new int[capacity];
+        modifiers = new int[capacity];
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int getType(int i) {
+        return type[i];
+    }
+    
+    /**
+     * mouse x coordinate, 0 for key events
+     */
+    public int getX(int i) {
+        return x[i];
+    }
+    
+    /**
+     * mouse y coordinate, 0 for key events
+     */
+    public int getY(int i) {
+        return y[i];
+    }
+    
+    /**
+     * virtual key code, 0 for mouse events
+     */
+    public int getKeyCode(int i) {
+        return keyCode[i];
+    }
+    
+    /**
+     * extended modifiers, as in {@code InputEvent.getModifiersEx()}
+     */
+    public int getModifiers(int i) {
+        return modifiers[i];
+    }
+    
+    public int capacity() {
+        return type.length;
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.silenzz.flash2d;
+
+/**
+ * Preallocated ring buffer of input events from the EDT (the single producer)
+ * to the game thread (the single consumer).
+ * 
+ * The producer writes a record and then publishes it by moving the volatile
+ * tail; the consumer copies every published record into an InputBatch and
+ * then frees them by moving the volatile head. Neither side locks or
+ * allocates, and when the game falls far enough behind for the ring to fill
+ * up the newest events are dropped.
+ */
+public class InputQueue {
+    
+    private int[] type;
+    private int[] x;
+    private int[] y;
+    private int[] keyCode;
+    private int[] modifiers;
+    private int mask;
+    
+    private volatile long head; // written by the consumer
+    private volatile long tail; // written by the producer
+    
+    /**
+     * @param capacity maximum number of queued events, rounded up to a
+     *      power of 2
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        type = new int[size];
+        x = new int[size];
+        y = new int[size];
+        keyCode = new int[size];
+        modifiers = new int[size];
+        mask = size - 1;
+    }
+    
+    /**
+     * Record an event. Producer thread only.
+     * 
+     * @return false if the queue is full, the event is dropped
+     */
+    public boolean post(int eventType, int eventX, int eventY, int eventKeyCode, int eventModifiers) {
+        long t = tail;
+        if (t - head == type.length) {
+            return false;
+        }
+        int index = (int) t & mask;
+        type[index] = eventType;
+        x[index] = eventX;
+        y[index] = eventY;
+        keyCode[index] = eventKeyCode;
+        modifiers[index] = eventModifiers;
+        tail = t + 1; // publish
+        return true;
+    }
+    
+    /**
+     * Replace the contents of batch with the events posted since the last
+     * call, as many as fit. Consumer thread only.
+     */
+    public void drainTo(InputBatch batch) {
+        long h = head;
+        long available = tail - h;
+        int count = (int) Math.min(available, batch.capacity());
+        for (int i = 0; i < count; i++) {
+            int index = (int) (h + i) & mask;
+            batch.type[i] = type[index];
+            batch.x[i] = x[index];
+            batch.y[i] = y[index];
+            batch.keyCode[i] = keyCode[index];
+            batch.modifiers[i] = modifiers[index];
+        }
+        batch.size = count;
+        head = h + count; // free the slots
+    }
+    
+    public int capacity() {
+        return type.length;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.silenzz.flash2d;
+
+/**
+ * Game state driven by {@link GameLoop.Mode#FIXED_TIMESTEP}, where updates
+ * and renders happen at different rates.
+ */
+public interface InterpolatedGameStateListener extends GameStateListener {
+    
+    /**
+     * Render the game between the last two updates.
+     * 
+     * @param alpha fraction of an update step elapsed since the last
+     *      update, in [0, 1)
+     */
+    void render(double alpha);
+
+}
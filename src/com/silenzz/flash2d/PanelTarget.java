@@ -0,0 +1,133 @@
+package com.silenzz.flash2d;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+
+/**
+ * A Swing panel in a normal window. Frames are drawn into a back buffer image
+ * and copied onto the panel straight away (active rendering); the panel's
+ * paintComponent() should call paint() so it is also repainted by Swing,
+ * e.g. after being uncovered.
+ */
+public class PanelTarget implements RenderTarget {
+    
+    private JComponent panel;
+    private JFrame window; // only if created here
+    private int width;
+    private int height;
+    private BufferedImage image;
+    
+    public PanelTarget(JComponent panel, int width, int height) {
+        this.panel = panel;
+        this.width = width;
+        this.height = height;
+    }
+    
+    /**
+     * Open a window with a panel of the given size to render into.
+     */
+    public static PanelTarget inWindow(String title, int width, int height) {
+        final PanelTarget[] target = new PanelTarget[1];
+        JPanel panel = new JPanel() {
+            @Override
+            public void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                target[0].paint(g);
+            }
+        };
+        panel.setPreferredSize(new Dimension(width, height));
+        panel.setFocusable(true);
+        target[0] = new PanelTarget(panel, width, height);
+        
+        JFrame window = new JFrame(title);
+        window.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        window.setResizable(false);
+        window.add(panel);
+        window.pack();
+        window.setVisible(true);
+        panel.requestFocus();
+        target[0].window = window;
+        return target[0];
+    }
+    
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
+    @Override
+    public GraphicsConfiguration getGraphicsConfiguration() {
+        return panel.getGraphicsConfiguration();
+    }
+    
+    @Override
+    public Component getComponent() {
+        return panel;
+    }
+    
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+    
+    @Override
+    public Graphics2D getDrawGraphics() {
+        if (image == null) {
+            GraphicsConfiguration gc = panel.getGraphicsConfiguration();
+            if (gc != null) {
+                image = gc.createCompatibleImage(width, height);
+            } else { // not displayable yet
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+        }
+        return image.createGraphics();
+    }
+    
+    /**
+     * Copy the back buffer onto the panel.
+     * 
+     * @return false if the panel can't be drawn on yet
+     */
+    @Override
+    public boolean show() {
+        Graphics g = panel.getGraphics();
+        if (g == null) {
+            return false;
+        }
+        paint(g);
+        Toolkit.getDefaultToolkit().sync();
+        g.dispose();
+        return true;
+    }
+    
+    /**
+     * Draw the last frame, for the panel's paintComponent().
+     */
+    public void paint(Graphics g) {
+        if (image != null) {
+            g.drawImage(image, 0, 0, null);
+        }
+    }
+    
+    @Override
+    public void dispose() {
+        if (window != null) {
+            window.dispose();
+        }
+    }
+
+}
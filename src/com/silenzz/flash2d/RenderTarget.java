@@ -0,0 +1,55 @@
+package com.silenzz.flash2d;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+
+/**
+ * Where a {@link GameFrame} draws its frames: a full-screen window with a
+ * {@link BufferStrategyTarget}, a Swing panel with a {@link PanelTarget}, or
+ * an offscreen image with an {@link ImageTarget}, which needs no display at
+ * all and so also runs with java.awt.headless=true.
+ * 
+ * Each frame is drawn into getDrawGraphics(), which is then disposed, and
+ * made visible with show(). Only used from the game thread.
+ */
+public interface RenderTarget {
+    
+    int getWidth();
+    
+    int getHeight();
+    
+    /**
+     * Configuration to create images compatible with the target.
+     */
+    GraphicsConfiguration getGraphicsConfiguration();
+    
+    /**
+     * The component receiving the input events, or null if there is none.
+     */
+    Component getComponent();
+    
+    /**
+     * @return true if what is drawn in one frame is still there in the next,
+     *      so only what changes needs to be drawn again
+     */
+    boolean isPersistent();
+    
+    /**
+     * Graphics for the next frame, to dispose once the frame is drawn.
+     */
+    Graphics2D getDrawGraphics();
+    
+    /**
+     * Make the frame drawn visible.
+     * 
+     * @return false if its contents were lost and it must be drawn again
+     */
+    boolean show();
+    
+    /**
+     * Release the target and the window or screen it uses, if any.
+     */
+    void dispose();
+
+}
@@ -0,0 +1,106 @@
+package com.silenzz.flash2d;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary log of a game session, enough to play it again update by update
+ * with a {@link SessionReplay}: the seed of the game's random numbers, the
+ * size of its screen, and the input events each update saw, tagged with
+ * the number of the update (the tick). Updates without input write nothing.
+ * 
+ * Records are gathered in a direct buffer that is only written to the
+ * FileChannel when full, so the game thread rarely touches the disk and
+ * allocates nothing while recording.
+ * 
+ * The layout, big-endian, is a header
+ *     int MAGIC, int VERSION, long seed, int width, int height, int ups
+ * then one record per update with input
+ *     long tick, int count, count x (int type, x, y, keyCode, modifiers)
+ * and, once closed, an end record: the number of ticks played and END.
+ * A log cut short (e.g. the game was killed) ends at its last whole event.
+ */
+public class SessionRecorder implements Closeable {
+    
+    public static final int MAGIC = 0x46324453; // "F2DS"
+    public static final int VERSION = 1;
+    
+    static final int END = -1;
+    static final int HEADER_SIZE = 28;
+    static final int RECORD_SIZE = 12; // tick and count
+    static final int EVENT_SIZE = 20;
+    static final int BUFFER_SIZE = 64 * 1024;
+    
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long ticks;
+    
+    /**
+     * Start a log in file, replacing it if it exists.
+     * 
+     * @param seed what the game seeds its random numbers with
+     */
+    public SessionRecorder(Path file, long seed, int width, int height, int ups) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(seed).putInt(width).putInt(height).putInt(ups);
+    }
+    
+    /**
+     * Log the input of update tick, called for every update in order.
+     * Game thread only.
+     */
+    public void record(long tick, InputBatch input) throws IOException {
+        ticks = tick + 1;
+        if (input.size == 0) {
+            return;
+        }
+        reserve(RECORD_SIZE);
+        buffer.putLong(tick).putInt(input.size);
+        for (int i = 0; i < input.size; i++) {
+            reserve(EVENT_SIZE);
+            buffer.putInt(input.type[i]).putInt(input.x[i]).putInt(input.y[i])
+                    .putInt(input.keyCode[i]).putInt(input.modifiers[i]);
+        }
+    }
+    
+    /**
+     * Write out what is buffered, e.g. to read the log while the game runs.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * End the log with the number of ticks played and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            reserve(RECORD_SIZE);
+            buffer.putLong(ticks).putInt(END);
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.silenzz.flash2d;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads back a log written by a {@link SessionRecorder}, handing each
+ * update the input it saw when the session was played. The log is
+ * streamed through a direct buffer, so logs of any length can be replayed
+ * without loading them.
+ * 
+ * A game replaying a log must be built as the recorded one was: seeded with
+ * getSeed() and getWidth() x getHeight() large. It is usually driven by a
+ * {@link GameLoop.Mode#HEADLESS} loop with a {@link SimulatedClock}, which
+ * replays a session as fast as the updates run; see
+ * {@link GameFrame#replaySession(SessionReplay)}.
+ */
+public class SessionReplay implements Closeable {
+    
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    
+    private long seed;
+    private int width;
+    private int height;
+    private int ups;
+    
+    // the next record, or the end of the session when nextCount is END
+    private long nextTick;
+    private int nextCount;
+    
+    public SessionReplay(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(SessionRecorder.BUFFER_SIZE);
+        buffer.flip(); // nothing read yet
+        try {
+            readHeader(file);
+            readRecord(0);
+        } catch (IOException | RuntimeException e) {
+            // the caller never gets the channel to close
+            try {
+                channel.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+    }
+    
+    private void readHeader(Path file) throws IOException {
+        if (!fill(SessionRecorder.HEADER_SIZE) || buffer.getInt() != SessionRecorder.MAGIC) {
+            throw new IOException("Not a session log: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != SessionRecorder.VERSION) {
+            throw new IOException("Unsupported session log version " + version + ": " + file);
+        }
+        seed = buffer.getLong();
+        width = buffer.getInt();
+        height = buffer.getInt();
+        ups = buffer.getInt();
+    }
+    
+    public long getSeed() {
+        return seed;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    public int getUps() {
+        return ups;
+    }
+    
+    /**
+     * Replace the contents of batch with the input of update tick, called
+     * for every update in order.
+     * 
+     * @return false once the session is over, batch is then empty
+     */
+    public boolean next(long tick, InputBatch batch) throws IOException {
+        batch.size = 0;
+        if (nextCount == SessionRecorder.END || tick < nextTick) {
+            return tick < nextTick;
+        }
+        
+        int count = nextCount;
+        for (int i = 0; i < count; i++) {
+            if (!fill(SessionRecorder.EVENT_SIZE)) {
+                endAt(tick + 1); // cut short
+                return true;
+            }
+            int type = buffer.getInt();
+            int x = buffer.getInt();
+            int y = buffer.getInt();
+            int keyCode = buffer.getInt();
+            int modifiers = buffer.getInt();
+            if (batch.size < batch.capacity()) {
+                batch.type[batch.size] = type;
+                batch.x[batch.size] = x;
+                batch.y[batch.size] = y;
+                batch.keyCode[batch.size] = keyCode;
+                batch.modifiers[batch.size] = modifiers;
+                batch.size++;
+            }
+        }
+        readRecord(tick + 1);
+        return true;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /**
+     * Read the header of the next record; a log cut short ends at ticks.
+     */
+    private void readRecord(long ticks) throws IOException {
+        if (fill(SessionRecorder.RECORD_SIZE)) {
+            nextTick = buffer.getLong();
+            nextCount = buffer.getInt();
+        } else {
+            endAt(ticks);
+        }
+    }
+    
+    private void endAt(long ticks) {
+        nextTick = ticks;
+        nextCount = SessionRecorder.END;
+    }
+    
+    /**
+     * Make sure bytes are ready in the buffer, reading more of the file
+     * if needed.
+     * 
+     * @return false if the file ends first
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+}
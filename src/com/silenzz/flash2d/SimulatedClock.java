@@ -0,0 +1,32 @@
+package com.silenzz.flash2d;
+
+/**
+ * Clock that only moves when told to. A headless {@link GameLoop} advances
+ * it by one update period per tick, so the game sees the time it would have
+ * seen running in real time, no matter how fast the ticks actually run.
+ */
+public class SimulatedClock implements GameClock {
+    
+    private volatile long now;
+    
+    public SimulatedClock() {
+        this(0);
+    }
+    
+    public SimulatedClock(long start) {
+        now = start;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+    
+    /**
+     * Only called from the loop thread.
+     */
+    public void advance(long nanos) {
+        now += nanos;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.silenzz.flash2d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shapes rasterised once into small images compatible with the screen, so
+ * they are drawn with a drawImage() (a plain copy, and a cached texture on
+ * accelerated pipelines) instead of being rasterised again every frame.
+ * 
+ * Sprites are kept per GraphicsConfiguration, and dropped with it once it
+ * is no longer used. Lookups take a lock, so callers should keep the sprite
+ * they get rather than asking for it every frame.
+ */
+public class SpriteCache {
+    
+    // by shape key, see ovalKey()
+    private static Map<GraphicsConfiguration, Map<Long, BufferedImage>> sprites = new WeakHashMap<>();
+    
+    private SpriteCache() {
+    }
+    
+    /**
+     * A size x size image with an oval drawn exactly as
+     * {@code fillOval(0, 0, size, size)} would, transparent elsewhere.
+     */
+    public static synchronized BufferedImage getOval(GraphicsConfiguration gc, int size, Color color) {
+        Map<Long, BufferedImage> gcSprites = sprites.computeIfAbsent(gc, k -> new HashMap<>());
+        Long key = ovalKey(size, color);
+        BufferedImage sprite = gcSprites.get(key);
+        if (sprite == null) {
+            sprite = gc.createCompatibleImage(size, size, Transparency.BITMASK);
+            Graphics2D g = sprite.createGraphics();
+            g.setColor(color);
+            g.fillOval(0, 0, size, size);
+            g.dispose();
+            gcSprites.put(key, sprite);
+        }
+        return sprite;
+    }
+    
+    private static Long ovalKey(int size, Color color) {
+        return ((long) size << 32) | (color.getRGB() & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * forget every sprite, e.g. after a display change
+     */
+    public static synchronized void clear() {
+        sprites.clear();
+    }
+
+}
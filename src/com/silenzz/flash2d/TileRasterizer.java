@@ -0,0 +1,299 @@
+package com.silenzz.flash2d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Software rasteriser writing straight into the int pixels of an offscreen
+ * image, with the frame split into square tiles rasterised in parallel on
+ * a ForkJoinPool, where Java2D would draw everything on the calling thread.
+ * 
+ * Shapes are recorded with fillRect() and fillMask(), binned into the tiles
+ * they touch, and drawn in the same order by flush(), each tile by a
+ * single task. Colors are opaque and nothing is blended, so the pixels are
+ * exactly those of Java2D's fillRect() and of drawing the masked sprite.
+ * 
+ * Recording and flush() are for one thread (the game thread); the image
+ * can't be accelerated by Java2D once its pixels have been taken.
+ */
+public class TileRasterizer {
+    
+    public static final int DEFAULT_TILE_SIZE = 64;
+    
+    private static final int RECT = 0;
+    private static final int MASK = 1;
+    private static final int FIELDS = 6; // kind, x, y, width, height, rgb
+    private static final int TILES_PER_TASK = 4;
+    
+    private BufferedImage image;
+    private int[] pixels;
+    private int base; // index of pixel (0,0)
+    private int scanline;
+    private int width;
+    private int height;
+    
+    private int tileSize;
+    private int tilesX;
+    private int tilesY;
+    private ForkJoinPool pool;
+    
+    // recorded shapes
+    private int[] commands = new int[FIELDS * 256];
+    private Mask[] masks = new Mask[256];
+    private int numCommands;
+    private boolean cleared;
+    private int background;
+    
+    // indexes of the commands touching each tile, in order
+    private int[][] bins;
+    private int[] binSizes;
+    
+    public TileRasterizer(BufferedImage image) {
+        this(image, DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * @param image a TYPE_INT_RGB or TYPE_INT_ARGB image
+     */
+    public TileRasterizer(BufferedImage image, int tileSize, ForkJoinPool pool) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+            throw new IllegalArgumentException("Unsupported image type: " + image.getType());
+        }
+        this.image = image;
+        this.tileSize = tileSize;
+        this.pool = pool;
+        width = image.getWidth();
+        height = image.getHeight();
+        
+        WritableRaster raster = image.getRaster();
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        pixels = buffer.getData();
+        scanline = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        base = buffer.getOffset() - raster.getSampleModelTranslateY() * scanline - raster.getSampleModelTranslateX();
+        
+        tilesX = (width + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+        bins = new int[tilesX * tilesY][16];
+        binSizes = new int[tilesX * tilesY];
+    }
+    
+    public BufferedImage getImage() {
+        return image;
+    }
+    
+    public int getTileSize() {
+        return tileSize;
+    }
+    
+    /**
+     * Fill the whole image before anything else recorded for this frame.
+     */
+    public void clear(Color color) {
+        cleared = true;
+        background = color.getRGB();
+    }
+    
+    public void fillRect(int x, int y, int width, int height, Color color) {
+        record(RECT, x, y, width, height, color.getRGB(), null);
+    }
+    
+    /**
+     * Set the pixels of the mask placed at (x,y) to color.
+     */
+    public void fillMask(Mask mask, int x, int y, Color color) {
+        record(MASK, x, y, mask.width, mask.height, color.getRGB(), mask);
+    }
+    
+    /**
+     * Draw everything recorded since the last flush, then forget it.
+     */
+    public void flush() {
+        pool.invoke(new TileTask(0, bins.length));
+        Arrays.fill(binSizes, 0);
+        Arrays.fill(masks, 0, numCommands, null);
+        numCommands = 0;
+        cleared = false;
+    }
+    
+    private void record(int kind, int x, int y, int w, int h, int rgb, Mask mask) {
+        // the tiles touched, if any
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, width);
+        int y1 = Math.min(y + h, height);
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        
+        if (numCommands == masks.length) {
+            commands = Arrays.copyOf(commands, commands.length * 2);
+            masks = Arrays.copyOf(masks, masks.length * 2);
+        }
+        int c = numCommands * FIELDS;
+        commands[c] = kind;
+        commands[c + 1] = x;
+        commands[c + 2] = y;
+        commands[c + 3] = w;
+        commands[c + 4] = h;
+        commands[c + 5] = rgb;
+        masks[numCommands] = mask;
+        
+        int tx1 = (x1 - 1) / tileSize;
+        int ty1 = (y1 - 1) / tileSize;
+        for (int ty = y0 / tileSize; ty <= ty1; ty++) {
+            for (int tx = x0 / tileSize; tx <= tx1; tx++) {
+                int tile = ty * tilesX + tx;
+                if (binSizes[tile] == bins[tile].length) {
+                    bins[tile] = Arrays.copyOf(bins[tile], binSizes[tile] * 2);
+                }
+                bins[tile][binSizes[tile]++] = numCommands;
+            }
+        }
+        numCommands++;
+    }
+    
+    private void rasterize(int tile) {
+        int tx0 = (tile % tilesX) * tileSize;
+        int ty0 = (tile / tilesX) * tileSize;
+        int tx1 = Math.min(tx0 + tileSize, width);
+        int ty1 = Math.min(ty0 + tileSize, height);
+        
+        if (cleared) {
+            for (int y = ty0; y < ty1; y++) {
+                int row = base + y * scanline;
+                Arrays.fill(pixels, row + tx0, row + tx1, background);
+            }
+        }
+        
+        int[] bin = bins[tile];
+        for (int i = 0; i < binSizes[tile]; i++) {
+            int c = bin[i] * FIELDS;
+            int x = commands[c + 1];
+            int y = commands[c + 2];
+            int x0 = Math.max(x, tx0);
+            int y0 = Math.max(y, ty0);
+            int x1 = Math.min(x + commands[c + 3], tx1);
+            int y1 = Math.min(y + commands[c + 4], ty1);
+            int rgb = commands[c + 5];
+            
+            if (commands[c] == RECT) {
+                for (int py = y0; py < y1; py++) {
+                    int row = base + py * scanline;
+                    Arrays.fill(pixels, row + x0, row + x1, rgb);
+                }
+            } else {
+                Mask mask = masks[bin[i]];
+                for (int py = y0; py < y1; py++) {
+                    int row = base + py * scanline;
+                    int my = py - y;
+                    for (int s = mask.rows[my]; s < mask.rows[my + 1]; s += 2) {
+                        int sx0 = Math.max(x + mask.spans[s], x0);
+                        int sx1 = Math.min(x + mask.spans[s + 1], x1);
+                        if (sx0 < sx1) {
+                            Arrays.fill(pixels, row + sx0, row + sx1, rgb);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    private class TileTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private int from;
+        private int to;
+        
+        private TileTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= TILES_PER_TASK) {
+                for (int tile = from; tile < to; tile++) {
+                    rasterize(tile);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(from, middle), new TileTask(middle, to));
+            }
+        }
+    
+    }
+    
+    /**
+     * The opaque pixels of a sprite, as runs of pixels on each row.
+     */
+    public static class Mask {
+        
+        private int width;
+        private int height;
+        private int[] rows; // start in spans of each row, and the end
+        private int[] spans; // [x0, x1) pairs
+        
+        /**
+         * The pixels of sprite that are not fully transparent.
+         */
+        public Mask(BufferedImage sprite) {
+            width = sprite.getWidth();
+            height = sprite.getHeight();
+            rows = new int[height + 1];
+            int[] runs = new int[width + 1];
+            spans = new int[0];
+            int numSpans = 0;
+            for (int y = 0; y < height; y++) {
+                rows[y] = numSpans * 2;
+                int count = 0;
+                int x = 0;
+                while (x < width) {
+                    while (x < width && (sprite.getRGB(x, y) >>> 24) == 0) {
+                        x++;
+                    }
+                    if (x < width) {
+                        runs[count++] = x;
+                        while (x < width && (sprite.getRGB(x, y) >>> 24) != 0) {
+                            x++;
+                        }
+                        runs[count++] = x;
+                    }
+                }
+                spans = Arrays.copyOf(spans, spans.length + count);
+                System.arraycopy(runs, 0, spans, numSpans * 2, count);
+                numSpans += count / 2;
+            }
+            rows[height] = numSpans * 2;
+        }
+        
+        /**
+         * The pixels {@code fillOval(0, 0, size, size)} sets.
+         */
+        public static Mask oval(int size) {
+            BufferedImage sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = sprite.createGraphics();
+            g.setColor(Color.WHITE);
+            g.fillOval(0, 0, size, size);
+            g.dispose();
+            return new Mask(sprite);
+        }
+        
+        public int getWidth() {
+            return width;
+        }
+        
+        public int getHeight() {
+            return height;
+        }
+    
+    }
+
+}
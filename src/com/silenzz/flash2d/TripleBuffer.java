@@ -0,0 +1,57 @@
+package com.silenzz.flash2d;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Three copies of some state handed from one producer thread (the update
+ * thread) to one consumer thread (the render thread) without locking or
+ * waiting: the producer fills the back copy and publishes it, the consumer
+ * takes the latest copy published. Neither ever touches the copy the other
+ * is using, and copies published but not taken in time are just reused.
+ */
+public class TripleBuffer<T> {
+    
+    private static final int INDEX = 3;
+    private static final int FRESH = 4; // the middle copy has not been taken
+    
+    private Object[] copies = new Object[3];
+    private int back = 0; // producer's
+    private int front = 1; // consumer's
+    private AtomicInteger middle = new AtomicInteger(2);
+    
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = factory.get();
+        }
+    }
+    
+    /**
+     * The copy to fill, producer only. It holds whatever was published
+     * two or more times before, so it must be filled in full.
+     */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) copies[back];
+    }
+    
+    /**
+     * Make the back copy the latest, producer only.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+    
+    /**
+     * The latest copy published, consumer only. It stays untouched until the
+     * next call, and is the same copy again when nothing new was published.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return (T) copies[front];
+    }
+
+}
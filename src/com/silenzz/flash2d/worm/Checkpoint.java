@@ -0,0 +1,157 @@
+package com.silenzz.flash2d.worm;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.silenzz.flash2d.GameStats;
+
+/**
+ * The state of a WormChase game (game tick, score and game over, stats,
+ * worm and obstacles) saved to a file and restored from it in one go. The
+ * file is memory-mapped and every part writes its fields straight into the
+ * mapping, coordinates as whole int arrays, so even hundreds of thousands
+ * of obstacles are saved and loaded in milliseconds, with no serialisation
+ * of objects.
+ * 
+ * The layout is fixed, little-endian: a header
+ *     int MAGIC, int VERSION, int gameSize, int statsSize, int wormSize, int obstaclesSize
+ * then the game, the stats, the worm and the obstacles as written by their
+ * saveTo(), taking the number of bytes given in the header. The game and
+ * the stats are optional, with a size of 0 when left out. A file whose
+ * sizes do not add up, or whose parts hold counts that don't fit their
+ * sizes or indexes out of range, is rejected before anything is restored.
+ * 
+ * Saving does not force the file to disk; the operating system writes it
+ * back when it sees fit.
+ */
+public class Checkpoint {
+    
+    public static final int MAGIC = 0x46324443; // "F2DC"
+    public static final int VERSION = 2;
+    
+    private static final int HEADER_SIZE = 6 * 4;
+    
+    private Checkpoint() {
+    }
+    
+    /**
+     * Save the stats, the worm and the obstacles in file, replacing it if
+     * it exists.
+     */
+    public static void save(Path file, GameStats stats, Worm worm, Obstacles obs) throws IOException {
+        save(file, null, stats, worm, obs);
+    }
+    
+    /**
+     * Save the state in file, replacing it if it exists. The state itself
+     * is left as it is.
+     * 
+     * @param game the game's own state, or null to leave it out
+     * @param stats the stats, or null to leave them out
+     */
+    public static void save(Path file, WormChase game, GameStats stats, Worm worm, Obstacles obs)
+            throws IOException {
+        int gameSize = game == null ? 0 : game.getCheckpointSize();
+        int statsSize = stats == null ? 0 : stats.getCheckpointSize();
+        int wormSize = worm.getCheckpointSize();
+        int obstaclesSize = obs.getCheckpointSize();
+        long size = (long) HEADER_SIZE + gameSize + statsSize + wormSize + obstaclesSize;
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(gameSize).putInt(statsSize).putInt(wormSize)
+                    .putInt(obstaclesSize);
+            if (game != null) {
+                game.saveTo(buffer);
+            }
+            if (stats != null) {
+                stats.saveTo(buffer);
+            }
+            worm.saveTo(buffer);
+            obs.saveTo(buffer);
+        }
+    }
+    
+    /**
+     * Replace the stats, the worm and the obstacles with those saved in
+     * file. Game thread only.
+     */
+    public static void load(Path file, GameStats stats, Worm worm, Obstacles obs) throws IOException {
+        load(file, null, stats, worm, obs);
+    }
+    
+    /**
+     * Replace the state with the one saved in file. A part that is null,
+     * or that the file leaves out, is left as it is. Game thread only.
+     */
+    public static void load(Path file, WormChase game, GameStats stats, Worm worm, Obstacles obs)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a checkpoint: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+            }
+            int gameSize = buffer.getInt();
+            int statsSize = buffer.getInt();
+            int wormSize = buffer.getInt();
+            int obstaclesSize = buffer.getInt();
+            if (gameSize < 0 || statsSize < 0 || wormSize < 0 || obstaclesSize < 0
+                    || (long) HEADER_SIZE + gameSize + statsSize + wormSize + obstaclesSize != size) {
+                throw new IOException("Truncated checkpoint: " + file);
+            }
+            
+            // every part is checked before any is restored, see isValid()
+            if (!isValid(buffer, gameSize, statsSize, wormSize, obstaclesSize)) {
+                throw new IOException("Corrupt checkpoint: " + file);
+            }
+            
+            // every part starts where the header says, whatever it reads
+            int statsStart = HEADER_SIZE + gameSize;
+            int wormStart = statsStart + statsSize;
+            if (game != null && gameSize > 0) {
+                game.restoreFrom(buffer);
+            }
+            buffer.position(statsStart);
+            if (stats != null && statsSize > 0) {
+                stats.restoreFrom(buffer);
+            }
+            buffer.position(wormStart);
+            worm.restoreFrom(buffer);
+            buffer.position(wormStart + wormSize);
+            obs.restoreFrom(buffer);
+        }
+    }
+    
+    /**
+     * Are the counts in every part consistent with the part's size? The
+     * buffer is left at the end of the header.
+     */
+    private static boolean isValid(MappedByteBuffer buffer, int gameSize, int statsSize, int wormSize,
+            int obstaclesSize) {
+        boolean valid = gameSize == 0 || WormChase.isValidCheckpoint(buffer, gameSize);
+        buffer.position(HEADER_SIZE + gameSize);
+        valid = valid && (statsSize == 0 || GameStats.isValidCheckpoint(buffer, statsSize));
+        buffer.position(HEADER_SIZE + gameSize + statsSize);
+        valid = valid && Worm.isValidCheckpoint(buffer, wormSize);
+        buffer.position(HEADER_SIZE + gameSize + statsSize + wormSize);
+        valid = valid && Obstacles.isValidCheckpoint(buffer, obstaclesSize);
+        buffer.position(HEADER_SIZE);
+        return valid;
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.silenzz.flash2d.worm;
+
+/**
+ * Brute-force collision tests over packed coordinate arrays, as done by
+ * {@link Worm#touchedAt(int, int)} over the dots of a worm and by
+ * {@link Obstacles#hits(int, int, int)} while there are too few boxes for
+ * the grid to pay off.
+ * 
+ * Two implementations: a scalar loop, always there, and one comparing many
+ * coordinates per instruction with the incubating Vector API
+ * (jdk.incubator.vector). The vector one lives apart from the rest of the
+ * sources, in vector/, since it only compiles and runs with
+ * {@code --add-modules jdk.incubator.vector}:
+ * 
+ *     javac -d out $(find src -name '*.java')
+ *     javac --add-modules jdk.incubator.vector -cp out -d out $(find vector -name '*.java')
+ *     java --add-modules jdk.incubator.vector -cp out ...
+ * 
+ * get() is the vector implementation when it was compiled in, the module is
+ * available and the CPU has SIMD registers of at least 4 ints, and the scalar
+ * one otherwise, or always with -Dflash2d.vector=false.
+ */
+public abstract class CollisionScan {
+    
+    /**
+     * system property switching the vector implementation off when false
+     */
+    public static final String VECTOR_PROPERTY = "flash2d.vector";
+    
+    private static final CollisionScan SCALAR = new ScalarScan();
+    private static final CollisionScan VECTOR = loadVector();
+    private static final CollisionScan DEFAULT =
+            VECTOR != null && Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true")) ? VECTOR : SCALAR;
+    
+    /**
+     * the implementation used by the game
+     */
+    public static CollisionScan get() {
+        return DEFAULT;
+    }
+    
+    public static CollisionScan scalar() {
+        return SCALAR;
+    }
+    
+    /**
+     * the vector implementation, or null if it can't be used
+     */
+    public static CollisionScan vector() {
+        return VECTOR;
+    }
+    
+    private static CollisionScan loadVector() {
+        try {
+            Class<?> vector = Class.forName("com.silenzz.flash2d.worm.VectorCollisionScan");
+            if (!(Boolean) vector.getDeclaredMethod("isSupported").invoke(null)) {
+                return null; // no SIMD
+            }
+            return (CollisionScan) vector.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // not compiled in, or no module
+        }
+    }
+    
+    public abstract String getName();
+    
+    /**
+     * Up to how many boxes a scan of them all is quicker than a look in
+     * the grid of Obstacles, which costs about as much as a scalar scan
+     * of 16 boxes whatever their number
+     */
+    public abstract int getScanLimit();
+    
+    /**
+     * Does any box i in [from, to), with top-left corner (xs[i], ys[i]) and
+     * sides of boxSize, intersect the size x size square at (x,y)? Same
+     * semantics as {@code Rectangle.intersects()}, for sizes above 0.
+     */
+    public abstract boolean overlaps(int[] xs, int[] ys, int from, int to, int boxSize, int x, int y, int size);
+    
+    /**
+     * Is (x,y) at most radius away, on both axes, from any point
+     * (xs[i] + offset, ys[i] + offset) with i in [from, to)?
+     */
+    public abstract boolean near(int[] xs, int[] ys, int from, int to, int offset, int radius, int x, int y);
+    
+    private static class ScalarScan extends CollisionScan {
+        
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+        
+        @Override
+        public int getScanLimit() {
+            return 16;
+        }
+        
+        @Override
+        public boolean overlaps(int[] xs, int[] ys, int from, int to, int boxSize, int x, int y, int size) {
+            for (int i = from; i < to; i++) {
+                if (xs[i] < x + size && x < xs[i] + boxSize && ys[i] < y + size && y < ys[i] + boxSize) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        public boolean near(int[] xs, int[] ys, int from, int to, int offset, int radius, int x, int y) {
+            for (int i = from; i < to; i++) {
+                if (Math.abs(xs[i] + offset - x) <= radius && Math.abs(ys[i] + offset - y) <= radius) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.silenzz.flash2d.worm;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for every box added to the {@link Obstacles}.
+ */
+@Name("com.silenzz.flash2d.worm.ObstacleAdded")
+@Label("Obstacle Added")
+@Category({ "Flash2D", "WormChase" })
+@StackTrace(false)
+class ObstacleAddedEvent extends Event {
+    
+    @Label("X")
+    int x;
+    
+    @Label("Y")
+    int y;
+    
+    @Label("Obstacles")
+    @Description("Number of obstacles after the addition")
+    int obstacles;
+
+}
@@ -0,0 +1,231 @@
+package com.silenzz.flash2d.worm;
+
+import java.awt.Graphics;
+import java.util.Arrays;
+
+/**
+ * Uniform spatial hash grid of square boxes, all with sides of cellSize.
+ * 
+ * A box is not aligned to the grid, so it is stored in each of the (up to 4)
+ * cells it overlaps, and a query only looks at the cells overlapping the
+ * query square. Every box intersecting the query shares at least one cell
+ * with it, so the answer is exact while the work does not depend on the
+ * total number of boxes.
+ * 
+ * Cells are kept in an open addressing table from the packed cell
+ * coordinates to the first entry of the cell; entries of a cell are chained
+ * through entryNext[] and hold the box coordinates inline, so a query
+ * allocates nothing and does not chase pointers to Rectangle objects.
+ */
+class ObstacleGrid {
+    
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CELLS = 256; // power of 2
+    private static final int INITIAL_ENTRIES = 256;
+    
+    private int cellSize;
+    
+    // cell table
+    private long[] keys;
+    private int[] heads;
+    private int numCells;
+    
+    // entries, one per (cell, box) pair
+    private int[] entryX;
+    private int[] entryY;
+    private int[] entryNext;
+    private int numEntries;
+    
+    ObstacleGrid(int cellSize) {
+        this.cellSize = cellSize;
+        keys = new long[INITIAL_CELLS];
+        heads = newHeads(INITIAL_CELLS);
+        entryX = new int[INITIAL_ENTRIES];
+        entryY = new int[INITIAL_ENTRIES];
+        entryNext = new int[INITIAL_ENTRIES];
+    }
+    
+    /**
+     * add the box with top-left corner (x,y)
+     */
+    void add(int x, int y) {
+        int minCx = Math.floorDiv(x, cellSize);
+        int maxCx = Math.floorDiv(x + cellSize - 1, cellSize);
+        int minCy = Math.floorDiv(y, cellSize);
+        int maxCy = Math.floorDiv(y + cellSize - 1, cellSize);
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                addEntry(cellSlot(cx, cy), x, y);
+            }
+        }
+    }
+    
+    /**
+     * Reserve room for count more boxes, so Obstacles.addAll() can add many
+     * boxes at once without the entry arrays growing over and over.
+     */
+    void ensureCapacity(int count) {
+        long needed = numEntries + 4L * count; // a box overlaps up to 4 cells
+        if (needed > entryX.length) {
+            // at least doubled, so adding chunk after chunk stays linear
+            int capacity = (int) Math.min(Math.max(needed, 2L * entryX.length), Integer.MAX_VALUE - 8);
+            entryX = Arrays.copyOf(entryX, capacity);
+            entryY = Arrays.copyOf(entryY, capacity);
+            entryNext = Arrays.copyOf(entryNext, capacity);
+        }
+    }
+    
+    /**
+     * does any box intersect the size x size square with top-left corner (x,y)?
+     * Same semantics as {@code Rectangle.intersects()}.
+     */
+    boolean hits(int x, int y, int size) {
+        if (size <= 0) {
+            return false;
+        }
+        int minCx = Math.floorDiv(x, cellSize);
+        int maxCx = Math.floorDiv(x + size - 1, cellSize);
+        int minCy = Math.floorDiv(y, cellSize);
+        int maxCy = Math.floorDiv(y + size - 1, cellSize);
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                int slot = findSlot(cx, cy);
+                if (slot != EMPTY && cellHits(heads[slot], x, y, size)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * number of cells overlapping the w x h area at (x,y)
+     */
+    long countCells(int x, int y, int w, int h) {
+        long cols = Math.floorDiv(x + w - 1, cellSize) - Math.floorDiv(x, cellSize) + 1;
+        long rows = Math.floorDiv(y + h - 1, cellSize) - Math.floorDiv(y, cellSize) + 1;
+        return cols * rows;
+    }
+    
+    /**
+     * Fill every box overlapping the w x h area at (x,y). A box spanning
+     * several of the cells is filled once per cell.
+     */
+    void draw(Graphics g, int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        int minCx = Math.floorDiv(x, cellSize);
+        int maxCx = Math.floorDiv(x + w - 1, cellSize);
+        int minCy = Math.floorDiv(y, cellSize);
+        int maxCy = Math.floorDiv(y + h - 1, cellSize);
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                int slot = findSlot(cx, cy);
+                if (slot != EMPTY) {
+                    for (int e = heads[slot]; e != EMPTY; e = entryNext[e]) {
+                        g.fillRect(entryX[e], entryY[e], cellSize, cellSize);
+                    }
+                }
+            }
+        }
+    }
+    
+    private boolean cellHits(int entry, int x, int y, int size) {
+        while (entry != EMPTY) {
+            int bx = entryX[entry];
+            int by = entryY[entry];
+            if (bx < x + size && x < bx + cellSize && by < y + size && y < by + cellSize) {
+                return true;
+            }
+            entry = entryNext[entry];
+        }
+        return false;
+    }
+    
+    private void addEntry(int slot, int x, int y) {
+        if (numEntries == entryX.length) {
+            int capacity = entryX.length * 2;
+            entryX = Arrays.copyOf(entryX, capacity);
+            entryY = Arrays.copyOf(entryY, capacity);
+            entryNext = Arrays.copyOf(entryNext, capacity);
+        }
+        entryX[numEntries] = x;
+        entryY[numEntries] = y;
+        entryNext[numEntries] = heads[slot];
+        heads[slot] = numEntries;
+        numEntries++;
+    }
+    
+    /**
+     * slot of cell (cx,cy), which is created if needed
+     */
+    private int cellSlot(int cx, int cy) {
+        int slot = findSlot(cx, cy);
+        if (slot != EMPTY) {
+            return slot;
+        }
+        if ((numCells + 1) * 2 > keys.length) { // keep load factor under 0.5
+            rehash(keys.length * 2);
+        }
+        long key = key(cx, cy);
+        int mask = keys.length - 1;
+        slot = hash(key) & mask;
+        while (heads[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        numCells++;
+        return slot;
+    }
+    
+    /**
+     * slot of cell (cx,cy), or EMPTY if no box overlaps it
+     */
+    private int findSlot(int cx, int cy) {
+        long key = key(cx, cy);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (heads[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+    
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads;
+        keys = new long[capacity];
+        heads = newHeads(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (heads[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                heads[slot] = oldHeads[i];
+            }
+        }
+    }
+    
+    private static int[] newHeads(int capacity) {
+        int[] heads = new int[capacity];
+        Arrays.fill(heads, EMPTY);
+        return heads;
+    }
+    
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -0,0 +1,259 @@
+package com.silenzz.flash2d.worm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Obstacle maps, prebuilt layouts of boxes loaded into {@link Obstacles}
+ * in bulk. A map is either text or binary; readers tell them apart by the
+ * first bytes.
+ * 
+ * Text: one box per line, its top-left corner as two integers separated by
+ * spaces, tabs or a comma; blank lines and anything after a '#' are ignored.
+ * 
+ * Binary, little-endian: int MAGIC, int VERSION, then (int x, int y) per
+ * box up to the end of the file.
+ * 
+ * Maps are streamed: the bytes are parsed by hand from a fixed buffer, and
+ * the boxes handed to Obstacles.addAll() in chunks of CHUNK boxes, so maps
+ * of millions of boxes load in bounded memory without a String or a call
+ * into the game per box.
+ */
+public class ObstacleMap {
+    
+    public static final int MAGIC = 0x504D3246; // "F2MP" read as little-endian
+    public static final int VERSION = 1;
+    
+    private static final int CHUNK = 8192;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private InputStream in;
+    private Obstacles obs;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private int line = 1;
+    
+    private int[] xs = new int[CHUNK];
+    private int[] ys = new int[CHUNK];
+    private int numBoxes;
+    private int total;
+    
+    private ObstacleMap(InputStream in, Obstacles obs) {
+        this.in = in;
+        this.obs = obs;
+    }
+    
+    /**
+     * Add the boxes of the map in file to obs. Game thread only.
+     * 
+     * @return the number of boxes added
+     */
+    public static int load(Path file, Obstacles obs) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in, obs);
+        }
+    }
+    
+    /**
+     * Add the boxes of the map read from in to obs, text or binary. The
+     * boxes of the chunks read before an error stay added. Game thread only.
+     * 
+     * @return the number of boxes added
+     */
+    public static int read(InputStream in, Obstacles obs) throws IOException {
+        ObstacleMap map = new ObstacleMap(in, obs);
+        if (map.ensure(4) && map.getInt() == MAGIC) {
+            map.readBinary();
+        } else {
+            map.pos = 0;
+            map.readText();
+        }
+        map.flush();
+        return map.total;
+    }
+    
+    /**
+     * Write the boxes of obs to file as a text map.
+     */
+    public static void saveText(Path file, Obstacles obs) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            out.write("# Flash2D obstacle map: x y of the top-left corner of each box");
+            out.newLine();
+            for (int i = 0; i < obs.getNumObstacles(); i++) {
+                out.write(Integer.toString(obs.getX(i)));
+                out.write(' ');
+                out.write(Integer.toString(obs.getY(i)));
+                out.newLine();
+            }
+        }
+    }
+    
+    /**
+     * Write the boxes of obs to file as a binary map.
+     */
+    public static void saveBinary(Path file, Obstacles obs) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION);
+            for (int i = 0; i < obs.getNumObstacles(); i++) {
+                if (out.remaining() < 8) {
+                    write(channel, out);
+                }
+                out.putInt(obs.getX(i)).putInt(obs.getY(i));
+            }
+            write(channel, out);
+        }
+    }
+    
+    private static void write(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+    
+    private void readBinary() throws IOException {
+        if (!ensure(4)) {
+            throw new IOException("Obstacle map cut short in its header");
+        }
+        int version = getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported obstacle map version " + version);
+        }
+        while (ensure(8)) {
+            add(getInt(), getInt());
+        }
+        if (pos < limit) {
+            throw new IOException("Obstacle map cut short after " + (total + numBoxes) + " boxes");
+        }
+    }
+    
+    private void readText() throws IOException {
+        int c;
+        while ((c = skipBlanks()) >= 0) {
+            if (c == '\n') {
+                pos++;
+                line++;
+            } else if (c == '#') {
+                skipComment();
+            } else {
+                int x = parseInt();
+                c = skipBlanks();
+                if (c == ',') {
+                    pos++;
+                    skipBlanks();
+                }
+                int y = parseInt();
+                c = skipBlanks();
+                if (c == '#') {
+                    skipComment();
+                } else if (c >= 0 && c != '\n') {
+                    throw badLine();
+                }
+                add(x, y);
+            }
+        }
+    }
+    
+    /**
+     * Skip spaces, tabs and carriage returns.
+     * 
+     * @return the next byte, left unread, or -1 at the end of the map
+     */
+    private int skipBlanks() throws IOException {
+        while (ensure(1)) {
+            int c = buffer[pos];
+            if (c != ' ' && c != '\t' && c != '\r') {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+    
+    private void skipComment() throws IOException {
+        while (ensure(1) && buffer[pos] != '\n') {
+            pos++;
+        }
+    }
+    
+    private int parseInt() throws IOException {
+        boolean negative = ensure(1) && buffer[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (ensure(1) && buffer[pos] >= '0' && buffer[pos] <= '9') {
+            value = value * 10 + (buffer[pos++] - '0');
+            if (++digits > 10) {
+                throw badLine();
+            }
+        }
+        value = negative ? -value : value;
+        if (digits == 0 || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw badLine();
+        }
+        return (int) value;
+    }
+    
+    private IOException badLine() {
+        return new IOException("Bad obstacle map line " + line);
+    }
+    
+    private void add(int x, int y) {
+        xs[numBoxes] = x;
+        ys[numBoxes] = y;
+        if (++numBoxes == CHUNK) {
+            flush();
+        }
+    }
+    
+    private void flush() {
+        obs.addAll(xs, ys, 0, numBoxes);
+        total += numBoxes;
+        numBoxes = 0;
+    }
+    
+    private int getInt() {
+        int value = (buffer[pos] & 0xFF) | (buffer[pos + 1] & 0xFF) << 8
+                | (buffer[pos + 2] & 0xFF) << 16 | (buffer[pos + 3] & 0xFF) << 24;
+        pos += 4;
+        return value;
+    }
+    
+    /**
+     * Make sure bytes are ready in the buffer, reading more of the map
+     * if needed.
+     * 
+     * @return false if the map ends first
+     */
+    private boolean ensure(int bytes) throws IOException {
+        if (limit - pos >= bytes) {
+            return true;
+        }
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        while (limit < bytes) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.silenzz.flash2d.worm;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.util.Arrays;
+
+/**
+ * The boxes copied on the update thread, to be drawn on the render thread.
+ * Boxes are never removed, so a snapshot is brought up to date by copying
+ * only those added since. See {@link Obstacles#copyTo(ObstaclesSnapshot)}.
+ */
+public class ObstaclesSnapshot {
+    
+    private int[] boxesX = new int[64];
+    private int[] boxesY = new int[64];
+    private int numBoxes;
+    private int generation; // of the boxes copied, see Obstacles.restoreFrom()
+    
+    void add(int x, int y) {
+        if (numBoxes == boxesX.length) {
+            boxesX = Arrays.copyOf(boxesX, numBoxes * 2);
+            boxesY = Arrays.copyOf(boxesY, numBoxes * 2);
+        }
+        boxesX[numBoxes] = x;
+        boxesY[numBoxes] = y;
+        numBoxes++;
+    }
+    
+    /**
+     * Forget the boxes, to copy those of another generation.
+     */
+    void clear(int generation) {
+        this.generation = generation;
+        numBoxes = 0;
+    }
+    
+    int getGeneration() {
+        return generation;
+    }
+    
+    public int getNumObstacles() {
+        return numBoxes;
+    }
+    
+    public void draw(Graphics g) {
+        g.setColor(Color.BLUE);
+        for (int i = 0; i < numBoxes; i++) {
+            g.fillRect(boxesX[i], boxesY[i], Obstacles.BOX_LENGTH, Obstacles.BOX_LENGTH);
+        }
+    }
+
+}
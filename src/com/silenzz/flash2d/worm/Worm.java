@@ -2,16 +2,23 @@ package com.silenzz.flash2d.worm;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.Point;
-import java.awt.geom.Point2D;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import com.silenzz.flash2d.DirtyRegions;
+import com.silenzz.flash2d.SpriteCache;
+import com.silenzz.flash2d.TileRasterizer;
 
 public class Worm {
 
-    private static final int DOT_SIZE = 12;
-    private static final int RADIUS = DOT_SIZE / 2;
-    private static final int MAX_POINTS = 40;
+    static final int DOT_SIZE = 12;
+    static final int RADIUS = DOT_SIZE / 2;
+    static final int MAX_POINTS = 40;
 
-    private static final int NUM_DIRS = 8;
+    static final int NUM_DIRS = 8;
     private static final int N = 0;
     private static final int NE = 1;
     private static final int E = 2;
@@ -20,14 +27,42 @@ public class Worm {
     private static final int SW = 5;
     private static final int W = 6;
     private static final int NW = 7;
-    private static final int NUM_PROBS = 9;
+    static final int NUM_PROBS = 9;
+    
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    
+    // increments for each compass dir, already multiplied by DOT_SIZE
+    static final int[] INCR_X = new int[NUM_DIRS];
+    static final int[] INCR_Y = new int[NUM_DIRS];
+    
+    // probability info for selecting a compass dir.
+    //    0 = no change, -1 means 1 step anti-clockwise,
+    //    1 means 1 step clockwise, etc.
+    /* The array means that usually the worm continues in
+       the same direction but may bear slightly to the left
+       or right. */
+    static final int[] PROBS_FOR_OFFSET = { 0, 0, 0, 1, 1, 2, -1, -1, -2 };
+    
+    // offsets to avoid an obstacle
+    static final int[] FIXED_OFFS = { -2, 2, -4 };
+    
+    static {
+        setIncrement(N, 0.0, -1.0);
+        setIncrement(NE, 0.7, -0.7);
+        setIncrement(E, 1.0, 0.0);
+        setIncrement(SE, 0.7, 0.7);
+        setIncrement(S, 0.0, 1.0);
+        setIncrement(SW, -0.7, 0.7);
+        setIncrement(W, -1.0, 0.0);
+        setIncrement(NW, -0.7, -0.7);
+    }
     
     private int currentCompass;
-    private Point2D.Double[] increments;
-    private int[] probsForOffset;
     
-    // Worm
-    private Point[] cells;
+    // Worm, the dots are a ring buffer of coordinates
+    private int maxPoints;
+    private int[] cellsX;
+    private int[] cellsY;
     private int nPoints;
     private int tailPos;
     private int headPos;
@@ -38,40 +73,77 @@ public class Worm {
     
     private long startTime; // in ms
     private Obstacles obs;
+    private long seed; // SplitMix64 state, see nextInt()
+    private DirtyRegions dirty;
+    
+    // pre-rendered dots, for the graphics configuration they were made for
+    private boolean useSprites = true;
+    private GraphicsConfiguration spritesGc;
+    private Image bodySprite;
+    private Image headSprite;
+    private TileRasterizer.Mask dotMask;
+    
+    // result of nextPoint()
+    private int nextX;
+    private int nextY;
+    
+    // result of interpolateHead(), and where markHead() last put the head
+    private int headX;
+    private int headY;
+    private int markedHeadX;
+    private int markedHeadY;
     
     public Worm(int pWidth, int pHeight, Obstacles obs) {
+        this(pWidth, pHeight, obs, MAX_POINTS);
+    }
+    
+    /**
+     * A worm that grows up to maxPoints dots long.
+     */
+    public Worm(int pWidth, int pHeight, Obstacles obs, int maxPoints) {
+        this(pWidth, pHeight, obs, maxPoints, new SplittableRandom().nextLong());
+    }
+    
+    /**
+     * A worm whose moves are drawn from seed, the moves
+     * {@code new SplittableRandom(seed)} would draw, so two worms given
+     * the same seed move the same way among the same obstacles.
+     */
+    public Worm(int pWidth, int pHeight, Obstacles obs, int maxPoints, long seed) {
         this.pWidth = pWidth;
         this.pHeight = pHeight;
         this.obs = obs;
+        this.maxPoints = maxPoints;
+        this.seed = seed;
         
-        cells = new Point[MAX_POINTS];
+        cellsX = new int[maxPoints];
+        cellsY = new int[maxPoints];
         nPoints = 0;
         headPos = -1;
         tailPos = -1;
-        
-        // increments for each compass dir
-        increments = new Point2D.Double[NUM_DIRS];
-        increments[N] = new Point2D.Double(0.0, -1.0);
-        increments[NE] = new Point2D.Double(0.7, -0.7);
-        increments[E] = new Point2D.Double(1.0, 0.0);
-        increments[SE] = new Point2D.Double(0.7, 0.7);
-        increments[S] = new Point2D.Double(0.0, 1.0);
-        increments[SW] = new Point2D.Double(-0.7, 0.7);
-        increments[W] = new Point2D.Double(-1.0, 0.0);
-        increments[NW] = new Point2D.Double(-0.7, -0.7);
-        
-        // probability info for selecting a compass dir.
-        //    0 = no change, -1 means 1 step anti-clockwise,
-        //    1 means 1 step clockwise, etc.
-        /* The array means that usually the worm continues in
-           the same direction but may bear slightly to the left
-           or right. */
-        probsForOffset = new int[NUM_PROBS];
-        probsForOffset[0] = 0;  probsForOffset[1] = 0;
-        probsForOffset[2] = 0;  probsForOffset[3] = 1;
-        probsForOffset[4] = 1;  probsForOffset[5] = 2;
-        probsForOffset[6] = -1;  probsForOffset[7] = -1;
-        probsForOffset[8] = -2;
+    }
+    
+    /**
+     * Store the increment of a unit step in compass dir, scaled
+     * by DOT_SIZE and truncated as nextPoint() used to do per move.
+     */
+    private static void setIncrement(int dir, double x, double y) {
+        INCR_X[dir] = (int) (DOT_SIZE * x);
+        INCR_Y[dir] = (int) (DOT_SIZE * y);
+    }
+    
+    /**
+     * Report the dots changed by every move to dirty, for
+     * dirty-region rendering.
+     */
+    public void setDirtyRegions(DirtyRegions dirty) {
+        this.dirty = dirty;
+    }
+    
+    private void markDot(int i) {
+        if (dirty != null) {
+            dirty.mark(cellsX[i], cellsY[i], DOT_SIZE, DOT_SIZE);
+        }
     }
     
     /**
@@ -81,23 +153,104 @@ public class Worm {
         if (nPoints == 0) {
             return false;
         }
-        return Math.abs(cells[headPos].x + RADIUS - x) <= DOT_SIZE
-                && Math.abs(cells[headPos].y + RADIUS - y) <= DOT_SIZE;
+        return Math.abs(cellsX[headPos] + RADIUS - x) <= DOT_SIZE
+                && Math.abs(cellsY[headPos] + RADIUS - y) <= DOT_SIZE;
     }
 
     /**
      * is (x,y) near any part of the worm's body?
      */
     public boolean touchedAt(int x, int y) {
-        int i = tailPos;
-        while (i != headPos) {
-            if (Math.abs(cells[i].x + RADIUS - x) <= RADIUS
-                    && Math.abs(cells[i].y + RADIUS - y) <= RADIUS) {
-                return true;
-            }
-            i = (i + 1) % MAX_POINTS;
+        // the dots from tailPos up to headPos, in one or two runs of the ring
+        CollisionScan scan = CollisionScan.get();
+        if (tailPos <= headPos) {
+            return scan.near(cellsX, cellsY, tailPos, headPos, RADIUS, RADIUS, x, y);
+        }
+        return scan.near(cellsX, cellsY, tailPos, maxPoints, RADIUS, RADIUS, x, y)
+                || scan.near(cellsX, cellsY, 0, headPos, RADIUS, RADIUS, x, y);
+    }
+    
+    public int getMaxPoints() {
+        return maxPoints;
+    }
+    
+    /**
+     * bytes written by saveTo()
+     */
+    public int getCheckpointSize() {
+        return 7 * 4 + 8 + 2 * 4 * maxPoints;
+    }
+    
+    /**
+     * Write the worm at the buffer's position: the size of its world, its
+     * bearing and its ring, as ints, then the state of its random generator,
+     * then its dots, x coordinates before y. The worm is left as it was, so
+     * it and a restored one go on drawing the same moves.
+     */
+    public void saveTo(ByteBuffer buffer) {
+        buffer.putInt(pWidth).putInt(pHeight).putInt(maxPoints).putInt(nPoints)
+                .putInt(headPos).putInt(tailPos).putInt(currentCompass);
+        buffer.putLong(seed);
+        buffer.asIntBuffer().put(cellsX).put(cellsY);
+        buffer.position(buffer.position() + 2 * 4 * maxPoints);
+    }
+    
+    /**
+     * Can the size bytes at the buffer's position be restored? The ring
+     * must hold as many dots as it says, and its bearing and ends must be
+     * in range: -1 for a worm that has not moved yet, otherwise as far
+     * apart as its length. The buffer's position is left alone.
+     */
+    public static boolean isValidCheckpoint(ByteBuffer buffer, int size) {
+        if (size < 7 * 4 + 8) {
+            return false;
+        }
+        int start = buffer.position();
+        int points = buffer.getInt(start + 8);
+        int n = buffer.getInt(start + 12);
+        int head = buffer.getInt(start + 16);
+        int tail = buffer.getInt(start + 20);
+        int compass = buffer.getInt(start + 24);
+        if (points <= 0 || 7 * 4 + 8 + 2 * 4L * points != size || compass < 0 || compass >= NUM_DIRS) {
+            return false;
+        }
+        if (n == 0) {
+            return head == -1 && tail == -1;
+        }
+        return n > 0 && n <= points && head >= 0 && head < points && tail >= 0 && tail < points
+                && (head - tail + points) % points + 1 == n;
+    }
+    
+    /**
+     * Replace the worm with one written by saveTo(), read at the buffer's
+     * position; see isValidCheckpoint(). Game thread only.
+     */
+    public void restoreFrom(ByteBuffer buffer) {
+        pWidth = buffer.getInt();
+        pHeight = buffer.getInt();
+        int points = buffer.getInt();
+        if (points != maxPoints) {
+            maxPoints = points;
+            cellsX = new int[maxPoints];
+            cellsY = new int[maxPoints];
+        }
+        nPoints = buffer.getInt();
+        headPos = buffer.getInt();
+        tailPos = buffer.getInt();
+        currentCompass = buffer.getInt();
+        seed = buffer.getLong();
+        buffer.asIntBuffer().get(cellsX).get(cellsY);
+        buffer.position(buffer.position() + 2 * 4 * maxPoints);
+        if (dirty != null) {
+            dirty.markAll();
         }
-        return false;
+    }
+    
+    /**
+     * Copy the dots into a snapshot, for drawing on another thread.
+     */
+    public void copyTo(WormSnapshot snapshot) {
+        snapshot.set(nPoints, cellsX, cellsY, tailPos);
     }
     
     /**
@@ -115,20 +268,24 @@ public class Worm {
      */
     public void move() {
         int prevPosn = headPos; // save old head posn while creating new one
-        headPos = (headPos + 1) % MAX_POINTS;
+        headPos = (headPos + 1) % maxPoints;
 
         if (nPoints == 0) { // empty array at start
             tailPos = headPos;
-            currentCompass = (int) (Math.random() * NUM_DIRS); // random dir.
-            cells[headPos] = new Point(pWidth / 2, pHeight / 2); // center pt
+            currentCompass = nextInt(NUM_DIRS); // random dir.
+            cellsX[headPos] = pWidth / 2; // center pt
+            cellsY[headPos] = pHeight / 2;
             nPoints++;
-        } else if (nPoints == MAX_POINTS) { // array is full
-            tailPos = (tailPos + 1) % MAX_POINTS; // forget last tail
+        } else if (nPoints == maxPoints) { // array is full
+            markDot(tailPos); // erased
+            tailPos = (tailPos + 1) % maxPoints; // forget last tail
             newHead(prevPosn);
-        } else { // still room in cells[]
+        } else { // still room in cellsX[]/cellsY[]
             newHead(prevPosn);
             nPoints++;
         }
+        markDot(prevPosn < 0 ? headPos : prevPosn); // red head becomes black
+        markDot(headPos);
     }
     
     /**
@@ -142,27 +299,26 @@ public class Worm {
        In the second phase we try a head which is 90 degrees
        clockwise, 90 degress clockwise, or 180 degrees reversed
        so that the obstacle is avoided. These bearings are 
-       stored in fixedOffs[].
+       stored in FIXED_OFFS[].
      */
     private void newHead(int prevPosn) {
-        Point newPt;
         int newBearing;
-        int fixedOffs[] = { -2, 2, -4 }; // offsets to avoid an obstacle
 
         newBearing = varyBearing();
-        newPt = nextPoint(prevPosn, newBearing);
+        nextPoint(prevPosn, newBearing);
         // Get a new position based on a semi-random
         // variation of the current position.
 
-        if (obs.hits(newPt, DOT_SIZE)) {
-            for (int i = 0; i < fixedOffs.length; i++) {
-                newBearing = calcBearing(fixedOffs[i]);
-                newPt = nextPoint(prevPosn, newBearing);
-                if (!obs.hits(newPt, DOT_SIZE))
+        if (obs.hits(nextX, nextY, DOT_SIZE)) {
+            for (int i = 0; i < FIXED_OFFS.length; i++) {
+                newBearing = calcBearing(FIXED_OFFS[i]);
+                nextPoint(prevPosn, newBearing);
+                if (!obs.hits(nextX, nextY, DOT_SIZE))
                     break; // one of the fixed offsets will work
             }
         }
-        cells[headPos] = newPt; // new head position
+        cellsX[headPos] = nextX; // new head position
+        cellsY[headPos] = nextY;
         currentCompass = newBearing; // new compass direction
     }
     
@@ -170,10 +326,36 @@ public class Worm {
      * vary the compass bearing semi-randomly
      */
     private int varyBearing() {
-        int newOffset = probsForOffset[(int) (Math.random() * NUM_PROBS)];
+        int newOffset = PROBS_FOR_OFFSET[nextInt(NUM_PROBS)];
         return calcBearing(newOffset);
     }
 
+    /**
+     * A number in [0, bound), the one {@code SplittableRandom.nextInt(bound)}
+     * would give from the same state; see WormPopulation.nextInt().
+     */
+    private int nextInt(int bound) {
+        int r = nextInt();
+        int m = bound - 1;
+        if ((bound & m) == 0) { // power of 2
+            return r & m;
+        }
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1) {
+            // u is in the incomplete last run of bound values, draw again
+        }
+        return r;
+    }
+    
+    /**
+     * the next 32 random bits, stepped and mixed as
+     * SplittableRandom.nextInt() does
+     */
+    private int nextInt() {
+        long z = seed += GOLDEN_GAMMA;
+        z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+        return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+    }
+
     /**
      * Use the offset to calculate a new compass bearing based
      * on the current compass direction.
@@ -190,20 +372,17 @@ public class Worm {
     }
     
     /**
-     * Return the next coordinate based on the previous position
-       and a compass bearing.
+     * Calculate the next coordinate (nextX, nextY) based on the
+       previous position and a compass bearing.
 
        Convert the compass bearing into predetermined increments 
-       (stored in incrs[]). Add the increments multiplied by the 
-       DOTSIZE to the old head position.
+       (stored in INCR_X[] and INCR_Y[], already multiplied by the
+       DOTSIZE) and add them to the old head position.
        Deal with wraparound.
      */
-    private Point nextPoint(int prevPosn, int bearing) {
-        // get the increments for the compass bearing
-        Point2D.Double incr = increments[bearing];
-
-        int newX = cells[prevPosn].x + (int) (DOT_SIZE * incr.x);
-        int newY = cells[prevPosn].y + (int) (DOT_SIZE * incr.y);
+    private void nextPoint(int prevPosn, int bearing) {
+        int newX = cellsX[prevPosn] + INCR_X[bearing];
+        int newY = cellsY[prevPosn] + INCR_Y[bearing];
 
         // modify newX/newY if < 0, or > pWidth/pHeight; use wraparound
         if (newX + DOT_SIZE < 0) { // is right hand edge invisible?
@@ -218,22 +397,118 @@ public class Worm {
             newY = newY - pHeight;
         }
 
-        return new Point(newX, newY);
+        nextX = newX;
+        nextY = newY;
+    }
+    
+    /**
+     * Draw dots as sprites (the default) or with fillOval(). Both give
+     * the same pixels; ovals may be faster on pipelines that accelerate them.
+     */
+    public void setUseSprites(boolean useSprites) {
+        this.useSprites = useSprites;
     }
     
     /**
      * draw a black worm with a red head
      */
     public void draw(Graphics g) {
+        draw(g, 1);
+    }
+    
+    /**
+     * Draw the worm with its head alpha of the way through the last move,
+     * for frames rendered between two updates: at 0 the head covers the
+     * dot before it, at 1 it is where the move put it. The body is drawn
+     * where it is.
+     */
+    public void draw(Graphics g, double alpha) {
+        if (useSprites) {
+            drawSprites((Graphics2D) g, alpha);
+            return;
+        }
         if (nPoints > 0) {
             g.setColor(Color.BLACK);
             int i = tailPos;
             while (i != headPos) {
-                g.fillOval(cells[i].x, cells[i].y, DOT_SIZE, DOT_SIZE);
-                i = (i + 1) % MAX_POINTS;
+                g.fillOval(cellsX[i], cellsY[i], DOT_SIZE, DOT_SIZE);
+                i = (i + 1) % maxPoints;
             }
+            interpolateHead(alpha);
             g.setColor(Color.RED);
-            g.fillOval(cells[headPos].x, cells[headPos].y, DOT_SIZE, DOT_SIZE);
+            g.fillOval(headX, headY, DOT_SIZE, DOT_SIZE);
+        }
+    }
+    
+    /**
+     * Mark where draw(g, alpha) puts the head and where it was put the
+     * last time, since the head moves on screen between updates while
+     * move() only marks whole dots.
+     */
+    public void markHead(double alpha) {
+        if (dirty == null || nPoints == 0) {
+            return;
+        }
+        interpolateHead(alpha);
+        dirty.mark(markedHeadX, markedHeadY, DOT_SIZE, DOT_SIZE);
+        dirty.mark(headX, headY, DOT_SIZE, DOT_SIZE);
+        markedHeadX = headX;
+        markedHeadY = headY;
+    }
+    
+    /**
+     * Set (headX, headY) alpha of the way from the dot before the head to
+     * the head, or to the head itself when the last move wrapped around an
+     * edge of the world.
+     */
+    private void interpolateHead(double alpha) {
+        headX = cellsX[headPos];
+        headY = cellsY[headPos];
+        if (alpha >= 1 || nPoints < 2) {
+            return;
+        }
+        int prevPosn = (headPos + maxPoints - 1) % maxPoints;
+        int dx = headX - cellsX[prevPosn];
+        int dy = headY - cellsY[prevPosn];
+        if (Math.abs(dx) <= DOT_SIZE && Math.abs(dy) <= DOT_SIZE) {
+            headX = cellsX[prevPosn] + (int) Math.round(alpha * dx);
+            headY = cellsY[prevPosn] + (int) Math.round(alpha * dy);
+        }
+    }
+
+    /**
+     * Record the worm in a software rasteriser, with the pixels fillOval()
+     * would set.
+     */
+    public void draw(TileRasterizer r) {
+        if (nPoints > 0) {
+            if (dotMask == null) {
+                dotMask = TileRasterizer.Mask.oval(DOT_SIZE);
+            }
+            int i = tailPos;
+            while (i != headPos) {
+                r.fillMask(dotMask, cellsX[i], cellsY[i], Color.BLACK);
+                i = (i + 1) % maxPoints;
+            }
+            r.fillMask(dotMask, cellsX[headPos], cellsY[headPos], Color.RED);
+        }
+    }
+
+    private void drawSprites(Graphics2D g, double alpha) {
+        if (nPoints > 0) {
+            GraphicsConfiguration gc = g.getDeviceConfiguration();
+            if (gc != spritesGc) {
+                bodySprite = SpriteCache.getOval(gc, DOT_SIZE, Color.BLACK);
+                headSprite = SpriteCache.getOval(gc, DOT_SIZE, Color.RED);
+                spritesGc = gc;
+            }
+            int i = tailPos;
+            while (i != headPos) {
+                g.drawImage(bodySprite, cellsX[i], cellsY[i], null);
+                i = (i + 1) % maxPoints;
+            }
+            interpolateHead(alpha);
+            g.drawImage(headSprite, headX, headY, null);
         }
     }
 
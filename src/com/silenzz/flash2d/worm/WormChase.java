@@ -4,47 +4,153 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
-import java.awt.event.KeyAdapter;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
-import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.event.MouseMotionAdapter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
 
+import com.silenzz.flash2d.GameClock;
 import com.silenzz.flash2d.GameFrame;
+import com.silenzz.flash2d.GameLoop;
+import com.silenzz.flash2d.GameStats;
+import com.silenzz.flash2d.HudLabel;
+import com.silenzz.flash2d.ImageTarget;
+import com.silenzz.flash2d.InputBatch;
+import com.silenzz.flash2d.RenderTarget;
+import com.silenzz.flash2d.SessionRecorder;
+import com.silenzz.flash2d.TripleBuffer;
 
 public class WormChase extends GameFrame {
     
     private static final int FPS = 60;
     
+    /**
+     * system property with the seed of the worm's moves, for repeatable
+     * runs; a new seed is picked for every game without it
+     */
+    public static final String SEED_PROPERTY = "flash2d.seed";
+    
+    /**
+     * system property with the file to log the session in, for playing
+     * it again with {@link WormChaseReplay}
+     */
+    public static final String RECORD_PROPERTY = "flash2d.record";
+    
+    /**
+     * system property with the file F5 saves the game in and F9 loads it
+     * from, wormchase.checkpoint in the working directory without it
+     */
+    public static final String CHECKPOINT_PROPERTY = "flash2d.checkpoint";
+    
+    // not initialised here, the loop may already run start() when the
+    // fields of this class would be
+    private long seed;
+    private boolean seeded;
+    
     private Worm fred;
+    private boolean fredMoved; // by the last update, so drawn moving
     private Obstacles obs;
     private int boxesUsed;
     
     // used at game termination
-    private volatile boolean gameOver;
+    private boolean gameOver;
     private int score = 0;
     private Font font;
     private FontMetrics metrics;
     private boolean finishedOff;
 
     // used by quit 'button'
-    private volatile boolean isOverQuitButton;
+    private boolean isOverQuitButton;
     private Rectangle quitArea;
 
     // used by the pause 'button'
-    private volatile boolean isOverPauseButton;
+    private boolean isOverPauseButton;
     private Rectangle pauseArea;
     
+    // HUD text, only rebuilt when the numbers change
+    private HudLabel frameCountLabel;
+    private HudLabel averageLabel;
+    private HudLabel timeSpentLabel;
+    
+    // screen areas repainted when what they show changes
+    private Rectangle frameCountArea;
+    private Rectangle averageArea;
+    private Rectangle bottomHudArea;
+    private Rectangle buttonsArea;
+    
+    // with a pipelined loop, the state drawn is a copy published by the
+    // update thread
+    private TripleBuffer<State> states;
+    private State shown;
+    
     public WormChase() {
         super("WormChase", FPS);
     }
     
+    public WormChase(GameLoop.Mode mode) {
+        this(mode, FPS, FPS);
+    }
+    
+    /**
+     * Play rendered fps times and updated ups times per second; the worm
+     * moves once per update. With a fixed timestep, frames between two
+     * updates show the worm's head on its way to the next dot.
+     */
+    public WormChase(GameLoop.Mode mode, int fps, int ups) {
+        super("WormChase", fps, ups, mode);
+    }
+    
+    /**
+     * Play into the given target, e.g. an offscreen {@link ImageTarget}
+     * to benchmark the rendering. The game loop is not started.
+     */
+    public WormChase(RenderTarget target, GameLoop.Mode mode) {
+        super(target, FPS, FPS, mode);
+    }
+    
+    /**
+     * Play into the given target with the worm's moves drawn from seed,
+     * so runs given the same input are the same.
+     */
+    public WormChase(RenderTarget target, GameLoop.Mode mode, long seed) {
+        this(target, mode, seed, GameClock.SYSTEM);
+    }
+    
+    /**
+     * Play with the loop timed by clock, e.g. a SimulatedClock to replay
+     * a session.
+     */
+    public WormChase(RenderTarget target, GameLoop.Mode mode, long seed, GameClock clock) {
+        super(target, FPS, FPS, mode, clock);
+        this.seed = seed;
+        seeded = true;
+    }
+    
     @Override
     public void start() {
         // create game components
         obs = new Obstacles(this);
-        fred = new Worm(width, height, obs);
+        if (!seeded) {
+            seed = Long.getLong(SEED_PROPERTY, new SplittableRandom().nextLong());
+            seeded = true;
+        }
+        System.out.println("Seed: " + seed);
+        fred = new Worm(width, height, obs, Worm.MAX_POINTS, seed);
+        
+        String session = System.getProperty(RECORD_PROPERTY);
+        if (session != null && !isReplaying()) {
+            try {
+                recordSession(new SessionRecorder(Paths.get(session), seed, width, height, gameLoop.getUps()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         
         // set up message font
         font = new Font("SansSerif", Font.BOLD, 24);
@@ -54,41 +160,38 @@ public class WormChase extends GameFrame {
         pauseArea = new Rectangle(width - 100, height - 45, 70, 15);
         quitArea = new Rectangle(width - 100, height - 20, 70, 15);
         
-        setListeners();
-    }
-    
-    private void setListeners() {
-        addMouseListener(new MouseAdapter() {
-            public void mousePressed(MouseEvent e) {
-                testPress(e.getX(), e.getY());
-            }
-        });
-        addMouseMotionListener(new MouseMotionAdapter() {
-            public void mouseMoved(MouseEvent e) {
-                testMove(e.getX(), e.getY());
-            }
-            public void mouseDragged(MouseEvent e) {
-                if (!gameLoop.isPaused() && !gameOver) {
-                    obs.add(e.getX(), e.getY());
-                }
-            }
-        });
+        frameCountLabel = new HudLabel(font, Color.BLUE, Color.WHITE, false, "Frame Count ", "");
+        averageLabel = new HudLabel(font, Color.BLUE, Color.WHITE, true, "Average FPS/UPS: ", " / ", "");
+        timeSpentLabel = new HudLabel(font, Color.BLUE, Color.WHITE, false, "Time Spent: ", " secs");
+        
+        // text is drawn at baselines 25 and height - 15, the button
+        // labels 10 pixels under the top of each button; the frame count
+        // area is wide enough for any count, it may run under the average
+        int frameCountWidth = 10 + metrics.stringWidth("Frame Count " + Long.MAX_VALUE);
+        frameCountArea = new Rectangle(0, 25 - metrics.getAscent(), frameCountWidth, metrics.getHeight());
+        averageArea = new Rectangle(250, 25 - metrics.getAscent(), width - 250, metrics.getHeight());
+        bottomHudArea = new Rectangle(0, height - 15 - metrics.getAscent(), pauseArea.x, metrics.getHeight());
+        int buttonsTop = pauseArea.y + 10 - metrics.getAscent();
+        int buttonsBottom = Math.max(quitArea.y + quitArea.height + 1, quitArea.y + 10 + metrics.getDescent());
+        buttonsArea = new Rectangle(pauseArea.x, buttonsTop, width - pauseArea.x, buttonsBottom - buttonsTop);
+        
+        if (gameLoop.getMode() == GameLoop.Mode.PIPELINED) {
+            // whole frames drawn from copies while the next updates run
+            states = new TripleBuffer<>(() -> new State(fred.getMaxPoints()));
+            publishState();
+        } else {
+            // only repaint what changes, obstacles are kept pre-rendered
+            // once there are too many to draw one by one
+            obs.cacheLayer(width, height, Obstacles.LAYER_MIN_BOXES);
+            obs.setDirtyRegions(dirty);
+            fred.setDirtyRegions(dirty);
+            setDirtyRendering(true);
+        }
+        
         readyForTermination();
     }
     
     private void readyForTermination() {
-        addKeyListener(new KeyAdapter() {
-            // listen for esc, q, end, ctrl-c on the canvas to
-            // allow a convenient exit from the full screen configuration
-            public void keyPressed(KeyEvent e) {
-                int keyCode = e.getKeyCode();
-                if ((keyCode == KeyEvent.VK_ESCAPE) || (keyCode == KeyEvent.VK_Q) || (keyCode == KeyEvent.VK_END)
-                        || ((keyCode == KeyEvent.VK_C) && e.isControlDown())) {
-                    gameLoop.stop();
-                }
-            }
-        });
-
         // for shutdown tasks
         // a shutdown may not only come from the program
         Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -99,20 +202,187 @@ public class WormChase extends GameFrame {
         });
     }
     
+    public long getSeed() {
+        return seed;
+    }
+    
     /**
-     * called from Obstacles object
+     * Save the game in file, see {@link Checkpoint}: its tick, score and
+     * game over, the worm, the obstacles, and the stats unless they belong
+     * to another thread. Game thread only.
+     */
+    public void saveCheckpoint(Path file) throws IOException {
+        Checkpoint.save(file, this, getCheckpointStats(), fred, obs);
+    }
+    
+    /**
+     * Go back to the game saved in file, which goes on as the saved game
+     * would have. Game thread only.
+     */
+    public void loadCheckpoint(Path file) throws IOException {
+        Checkpoint.load(file, this, getCheckpointStats(), fred, obs);
+    }
+    
+    /**
+     * the stats, or null when the loop is pipelined: they are then kept by
+     * the render thread and must not be touched from update()
+     */
+    private GameStats getCheckpointStats() {
+        return gameLoop.getMode() == GameLoop.Mode.PIPELINED ? null : gameLoop.getStats();
+    }
+    
+    /**
+     * bytes written by saveTo()
+     */
+    int getCheckpointSize() {
+        return 8 + 4 + 4;
+    }
+    
+    /**
+     * Write the game's own state at the buffer's position: the tick, game
+     * over (0 or 1) and the score.
+     */
+    void saveTo(ByteBuffer buffer) {
+        buffer.putLong(getTick()).putInt(gameOver ? 1 : 0).putInt(score);
+    }
+    
+    /**
+     * Can the size bytes at the buffer's position be restored? The buffer's
+     * position is left alone.
+     */
+    static boolean isValidCheckpoint(ByteBuffer buffer, int size) {
+        if (size != 8 + 4 + 4) {
+            return false;
+        }
+        long tick = buffer.getLong(buffer.position());
+        int gameOver = buffer.getInt(buffer.position() + 8);
+        return tick >= 0 && (gameOver == 0 || gameOver == 1);
+    }
+    
+    /**
+     * Replace the game's own state with the one written by saveTo(), read
+     * at the buffer's position. Game thread only.
+     */
+    void restoreFrom(ByteBuffer buffer) {
+        setTick(buffer.getLong());
+        gameOver = buffer.getInt() == 1;
+        score = buffer.getInt();
+        dirty.markAll();
+    }
+    
+    public boolean isGameOver() {
+        return gameOver;
+    }
+    
+    public int getScore() {
+        return score;
+    }
+    
+    public int getBoxesUsed() {
+        return boxesUsed;
+    }
+    
+    /**
+     * called from Obstacles object, on the game thread
      */
     public void setBoxNumber(int boxesUsed) {
         this.boxesUsed = boxesUsed;
     }
     
+    @Override
+    protected void processInput(InputBatch input) {
+        for (int i = 0; i < input.size(); i++) {
+            switch (input.getType(i)) {
+            case MouseEvent.MOUSE_PRESSED:
+                testPress(input.getX(i), input.getY(i));
+                break;
+            case MouseEvent.MOUSE_MOVED:
+                testMove(input.getX(i), input.getY(i));
+                break;
+            case MouseEvent.MOUSE_DRAGGED:
+                if (!gameLoop.isPaused() && !gameOver) {
+                    obs.add(input.getX(i), input.getY(i));
+                }
+                break;
+            case KeyEvent.KEY_PRESSED:
+                testKey(input.getKeyCode(i), input.getModifiers(i));
+                break;
+            }
+        }
+    }
+    
     @Override
     public void updateGame() {
-        if (!gameLoop.isPaused() && !gameOver) {
+        fredMoved = !gameLoop.isPaused() && !gameOver;
+        if (fredMoved) {
             fred.move();
         }
+        if (states != null) {
+            publishState();
+        }
+    }
+    
+    /**
+     * how far through its last move to draw the worm; it stays put while
+     * the game is paused or over
+     */
+    private double getFredAlpha() {
+        return fredMoved ? interpolation : 1;
+    }
+    
+    /**
+     * Copy what is drawn for the render thread, on the update thread.
+     */
+    private void publishState() {
+        State state = states.getBack();
+        fred.copyTo(state.worm);
+        obs.copyTo(state.obstacles);
+        state.gameOver = gameOver;
+        state.score = score;
+        state.paused = gameLoop.isPaused();
+        state.overPauseButton = isOverPauseButton;
+        state.overQuitButton = isOverQuitButton;
+        states.publish();
+    }
+    
+    @Override
+    protected void prepareFrame() {
+        if (states != null) {
+            shown = states.acquire();
+        }
+        if (!isDirtyRendering()) {
+            updateLabels(false);
+        }
+    }
+    
+    @Override
+    protected void markDirtyRegions() {
+        updateLabels(true);
+        if (gameLoop.getMode() == GameLoop.Mode.FIXED_TIMESTEP) {
+            fred.markHead(getFredAlpha()); // it moves between updates
+        }
+    }
+    
+    /**
+     * Update the HUD labels; the frame count changes every frame,
+     * the rest about once a second.
+     */
+    private void updateLabels(boolean mark) {
+        GameStats stats = gameLoop.getStats();
+        if (frameCountLabel.set(stats.getFrameCount()) && mark) {
+            dirty.mark(frameCountArea);
+        }
+        if (averageLabel.set((long) Math.rint(stats.getAverageFps()), (long) Math.rint(stats.getAverageUps())) && mark) {
+            dirty.mark(averageArea);
+        }
+        if (timeSpentLabel.set(stats.getTimeSpentInGame()) && mark) {
+            dirty.mark(bottomHudArea);
+        }
     }
     
+    /**
+     * Called once per dirty region, everything is clipped to it.
+     */
     @Override
     public void renderGame(Graphics gScr) {
         // clear the background
@@ -123,27 +393,52 @@ public class WormChase extends GameFrame {
         gScr.setFont(font);
 
         // report frame count & average FPS and UPS at top left
-        gScr.drawString(gameLoop.getStats().getFrameCountLabel(), 10, 25);
-        gScr.drawString(gameLoop.getStats().getAverageLabel(), 250, 25);
+        if (gScr.hitClip(frameCountArea.x, frameCountArea.y, frameCountArea.width, frameCountArea.height)) {
+            frameCountLabel.draw((Graphics2D) gScr, 10, 25);
+        }
+        if (gScr.hitClip(averageArea.x, averageArea.y, averageArea.width, averageArea.height)) {
+            averageLabel.draw((Graphics2D) gScr, 250, 25);
+        }
 
         // report time used and boxes used at bottom left
-        gScr.drawString(gameLoop.getStats().getTimeSpentLabel(), 10, height - 15);
-        //gScr.drawString("Boxes used: " + boxesUsed, 260, pHeight - 15);
+        if (gScr.hitClip(bottomHudArea.x, bottomHudArea.y, bottomHudArea.width, bottomHudArea.height)) {
+            timeSpentLabel.draw((Graphics2D) gScr, 10, height - 15);
+            //gScr.drawString("Boxes used: " + boxesUsed, 260, pHeight - 15);
+        }
+
+        if (shown != null) {
+            renderState(gScr, shown);
+            return;
+        }
 
         // draw the pause and quit 'buttons'
-        drawButtons(gScr);
+        if (gScr.hitClip(buttonsArea.x, buttonsArea.y, buttonsArea.width, buttonsArea.height)) {
+            drawButtons(gScr, isOverPauseButton, isOverQuitButton, gameLoop.isPaused());
+        }
 
         gScr.setColor(Color.BLACK);
         
         obs.draw(gScr);
-        fred.draw(gScr);
+        fred.draw(gScr, getFredAlpha());
 
         if (gameOver) {
-          gameOverMessage(gScr);
+          gameOverMessage(gScr, score);
+        }
+    }
+    
+    /**
+     * The rest of a frame drawn from a published copy of the state.
+     */
+    private void renderState(Graphics gScr, State state) {
+        drawButtons(gScr, state.overPauseButton, state.overQuitButton, state.paused);
+        state.obstacles.draw(gScr);
+        state.worm.draw(gScr);
+        if (state.gameOver) {
+            gameOverMessage(gScr, state.score);
         }
     }
     
-    private void drawButtons(Graphics g) {
+    private void drawButtons(Graphics g, boolean isOverPauseButton, boolean isOverQuitButton, boolean paused) {
         g.setColor(Color.BLACK);
 
         // draw the pause 'button'
@@ -152,7 +447,7 @@ public class WormChase extends GameFrame {
         }
 
         g.drawOval(pauseArea.x, pauseArea.y, pauseArea.width, pauseArea.height);
-        if (gameLoop.isPaused()) {
+        if (paused) {
             g.drawString("Paused", pauseArea.x, pauseArea.y + 10);
         } else {
             g.drawString("Pause", pauseArea.x + 5, pauseArea.y + 10);
@@ -175,7 +470,7 @@ public class WormChase extends GameFrame {
         }
     }
     
-    private void gameOverMessage(Graphics g) {
+    private void gameOverMessage(Graphics g, int score) {
         String msg = "Game Over. Your Score: " + score;
         int x = (width - metrics.stringWidth(msg)) / 2;
         int y = (height - metrics.getHeight()) / 2;
@@ -191,14 +486,18 @@ public class WormChase extends GameFrame {
     private void testPress(int x, int y) {
         if (isOverPauseButton) {
             gameLoop.togglePausing();
+            dirty.mark(buttonsArea);
         } else if (isOverQuitButton) {
             gameLoop.stop();
         } else {
             if (!gameLoop.isPaused() && !gameOver) {
                 if (fred.nearHead(x, y)) { // was mouse pressed near the head?
                     gameOver = true;
-                    score = (40 - gameLoop.getStats().getTimeSpentInGame()) + (40 - boxesUsed);
-                    // hack together a score
+                    dirty.markAll(); // for the game over message
+                    // hack together a score, from the game time rather
+                    // than the wall clock so a replay scores the same
+                    int timeSpent = (int) (getTick() / gameLoop.getUps());
+                    score = (40 - timeSpent) + (40 - boxesUsed);
                 } else { // add an obstacle if possible
                     if (!fred.touchedAt(x, y)) { // was the worm's body untouched?
                         obs.add(x, y);
@@ -208,11 +507,70 @@ public class WormChase extends GameFrame {
         }
     }
     
+    /**
+     * esc, q, end, ctrl-c allow a convenient exit from
+     * the full screen configuration; F5 saves the game and F9 loads it
+     */
+    private void testKey(int keyCode, int modifiers) {
+        if ((keyCode == KeyEvent.VK_ESCAPE) || (keyCode == KeyEvent.VK_Q) || (keyCode == KeyEvent.VK_END)
+                || ((keyCode == KeyEvent.VK_C) && (modifiers & InputEvent.CTRL_DOWN_MASK) != 0)) {
+            gameLoop.stop();
+        } else if (keyCode == KeyEvent.VK_F5 || keyCode == KeyEvent.VK_F9) {
+            checkpoint(keyCode == KeyEvent.VK_F5);
+        }
+    }
+    
+    /**
+     * Save or load the game in the checkpoint file. Saving leaves the game
+     * as it is, but no load while a session is recorded or replayed: it
+     * would jump to a state the log knows nothing of. A failed save or load
+     * is reported and the game goes on.
+     */
+    private void checkpoint(boolean save) {
+        if (!save && (isRecording() || isReplaying())) {
+            return;
+        }
+        Path file = Paths.get(System.getProperty(CHECKPOINT_PROPERTY, "wormchase.checkpoint"));
+        try {
+            if (save) {
+                saveCheckpoint(file);
+            } else {
+                loadCheckpoint(file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
     private void testMove(int x, int y) {
         if (gameLoop.isRunning()) { // stops problems with a rapid move after pressing 'quit'
+            boolean wasOverPauseButton = isOverPauseButton;
+            boolean wasOverQuitButton = isOverQuitButton;
             isOverPauseButton = pauseArea.contains(x, y) ? true : false;
             isOverQuitButton = quitArea.contains(x, y) ? true : false;
+            if (isOverPauseButton != wasOverPauseButton || isOverQuitButton != wasOverQuitButton) {
+                dirty.mark(buttonsArea);
+            }
         }
     }
+    
+    /**
+     * What a frame shows of the game, copied on the update thread.
+     */
+    private static class State {
+        
+        private WormSnapshot worm;
+        private ObstaclesSnapshot obstacles = new ObstaclesSnapshot();
+        private boolean gameOver;
+        private int score;
+        private boolean paused;
+        private boolean overPauseButton;
+        private boolean overQuitButton;
+        
+        private State(int maxPoints) {
+            worm = new WormSnapshot(maxPoints);
+        }
+        
+    }
 
 }
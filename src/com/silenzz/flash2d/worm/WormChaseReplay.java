@@ -0,0 +1,48 @@
+package com.silenzz.flash2d.worm;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import com.silenzz.flash2d.GameLoop;
+import com.silenzz.flash2d.ImageTarget;
+import com.silenzz.flash2d.SessionReplay;
+import com.silenzz.flash2d.SimulatedClock;
+
+/**
+ * Plays again a WormChase session logged with -Dflash2d.record=file,
+ * without a window and as fast as the updates run: the game is built with
+ * the recorded seed and screen size and driven by a headless loop with a
+ * simulated clock, so every update sees the input and the time it saw when
+ * the session was played. Frames, if any, are drawn offscreen.
+ * 
+ * Usage: WormChaseReplay file [renderInterval]
+ */
+public class WormChaseReplay {
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: WormChaseReplay file [renderInterval]");
+            return;
+        }
+        int renderInterval = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        
+        SessionReplay replay = new SessionReplay(Paths.get(args[0]));
+        ImageTarget target = new ImageTarget(replay.getWidth(), replay.getHeight());
+        WormChase game = new WormChase(target, GameLoop.Mode.HEADLESS, replay.getSeed(), new SimulatedClock());
+        game.replaySession(replay);
+        GameLoop gameLoop = game.getGameLoop();
+        gameLoop.setRenderInterval(renderInterval);
+        
+        long startTime = System.nanoTime();
+        gameLoop.run(); // on this thread, until the session is over
+        long timeDiff = System.nanoTime() - startTime;
+        
+        long ticks = game.getTick();
+        System.out.println("Replayed " + ticks + " ticks (" + (ticks / replay.getUps()) + " secs of game) in "
+                + (timeDiff / GameLoop.MICROSECONDS) + " ms");
+        System.out.println("Ticks/sec: " + (long) (ticks * (double) GameLoop.NANOSECONDS / timeDiff));
+        System.out.println("Boxes used: " + game.getBoxesUsed() + ", game over: " + game.isGameOver()
+                + ", score: " + game.getScore());
+    }
+
+}
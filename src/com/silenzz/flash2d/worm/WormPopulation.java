@@ -0,0 +1,318 @@
+package com.silenzz.flash2d.worm;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.silenzz.flash2d.SpriteCache;
+import com.silenzz.flash2d.TileRasterizer;
+
+/**
+ * Many worms moving as {@link Worm} does, stored as a structure of arrays
+ * instead of one object per worm: the per-worm state (head position, ring
+ * index, length, bearing) is in parallel int arrays, and the dots of worm w
+ * are the ring at [w * maxPoints, (w + 1) * maxPoints) of one pair of
+ * coordinate arrays. moveAll() then walks the per-worm arrays in order and
+ * touches a single dot of each ring, so a tick of many thousands of worms
+ * stays cheap and creates no garbage.
+ * 
+ * Each worm has its own random generator, a SplitMix64 state (the algorithm
+ * of SplittableRandom) seeded from the population's seed, and a worm only
+ * writes its own state, so worms can be moved in parallel on a ForkJoinPool
+ * (see setPool()) with results identical bit for bit whatever the number of
+ * threads. The obstacles are only read meanwhile and must not change.
+ * 
+ * The worms start at random places, with a random bearing.
+ */
+public class WormPopulation {
+    
+    private static final int WORMS_PER_TASK = 1024;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    
+    private int numWorms;
+    private int maxPoints;
+    private int pWidth;
+    private int pHeight;
+    private Obstacles obs;
+    private ForkJoinPool pool;
+    
+    // per worm
+    private int[] headX;
+    private int[] headY;
+    private int[] headPos; // in the worm's ring
+    private int[] nPoints;
+    private int[] compass;
+    private long[] seeds;
+    
+    // the rings of dots, worm after worm
+    private int[] cellsX;
+    private int[] cellsY;
+    
+    private GraphicsConfiguration spritesGc;
+    private Image bodySprite;
+    private Image headSprite;
+    private TileRasterizer.Mask dotMask;
+    
+    public WormPopulation(int numWorms, int pWidth, int pHeight, Obstacles obs, int maxPoints, long seed) {
+        this.numWorms = numWorms;
+        this.pWidth = pWidth;
+        this.pHeight = pHeight;
+        this.obs = obs;
+        this.maxPoints = maxPoints;
+        SplittableRandom random = new SplittableRandom(seed);
+        
+        headX = new int[numWorms];
+        headY = new int[numWorms];
+        headPos = new int[numWorms];
+        nPoints = new int[numWorms];
+        compass = new int[numWorms];
+        seeds = new long[numWorms];
+        cellsX = new int[numWorms * maxPoints];
+        cellsY = new int[numWorms * maxPoints];
+        
+        for (int w = 0; w < numWorms; w++) {
+            headX[w] = random.nextInt(pWidth);
+            headY[w] = random.nextInt(pHeight);
+            compass[w] = random.nextInt(Worm.NUM_DIRS);
+            seeds[w] = random.split().nextLong();
+            nPoints[w] = 1;
+            cellsX[w * maxPoints] = headX[w];
+            cellsY[w * maxPoints] = headY[w];
+        }
+    }
+    
+    public int getNumWorms() {
+        return numWorms;
+    }
+    
+    public int getMaxPoints() {
+        return maxPoints;
+    }
+    
+    public int getNumPoints(int w) {
+        return nPoints[w];
+    }
+    
+    public int getHeadX(int w) {
+        return headX[w];
+    }
+    
+    public int getHeadY(int w) {
+        return headY[w];
+    }
+    
+    /**
+     * Move the worms on pool from now on, or on the calling thread if null
+     * (the default).
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * Move every worm one step, growing those not yet maxPoints long.
+     */
+    public void moveAll() {
+        if (pool == null || numWorms <= WORMS_PER_TASK) {
+            move(0, numWorms);
+        } else {
+            pool.invoke(new MoveTask(0, numWorms));
+        }
+    }
+    
+    /**
+     * Move worms from to to - 1.
+     */
+    private void move(int from, int to) {
+        for (int w = from; w < to; w++) {
+            int bearing = calcBearing(compass[w], Worm.PROBS_FOR_OFFSET[nextInt(w, Worm.NUM_PROBS)]);
+            long next = nextPoint(headX[w], headY[w], bearing);
+            
+            // turn away from an obstacle, see Worm.newHead()
+            if (obs.hits((int) (next >> 32), (int) next, Worm.DOT_SIZE)) {
+                int oldBearing = compass[w];
+                for (int i = 0; i < Worm.FIXED_OFFS.length; i++) {
+                    bearing = calcBearing(oldBearing, Worm.FIXED_OFFS[i]);
+                    next = nextPoint(headX[w], headY[w], bearing);
+                    if (!obs.hits((int) (next >> 32), (int) next, Worm.DOT_SIZE)) {
+                        break;
+                    }
+                }
+            }
+            int nextX = (int) (next >> 32);
+            int nextY = (int) next;
+            
+            int head = headPos[w] + 1 == maxPoints ? 0 : headPos[w] + 1;
+            cellsX[w * maxPoints + head] = nextX;
+            cellsY[w * maxPoints + head] = nextY;
+            headPos[w] = head;
+            headX[w] = nextX;
+            headY[w] = nextY;
+            compass[w] = bearing;
+            if (nPoints[w] < maxPoints) {
+                nPoints[w]++;
+            }
+        }
+    }
+    
+    /**
+     * is (x,y) near the head of worm w?
+     */
+    public boolean nearHead(int w, int x, int y) {
+        return Math.abs(headX[w] + Worm.RADIUS - x) <= Worm.DOT_SIZE
+                && Math.abs(headY[w] + Worm.RADIUS - y) <= Worm.DOT_SIZE;
+    }
+    
+    private int calcBearing(int currentCompass, int offset) {
+        int turn = currentCompass + offset;
+        if (turn >= Worm.NUM_DIRS) {
+            turn = turn - Worm.NUM_DIRS;
+        } else if (turn < 0) {
+            turn = Worm.NUM_DIRS + turn;
+        }
+        return turn;
+    }
+    
+    /**
+     * A number in [0, bound) from worm w's generator, the one
+     * {@code new SplittableRandom(seed).nextInt(bound)} would give: the
+     * same stepping and mixing, and the same rejection of the few values
+     * that would make some results likelier than others.
+     */
+    private int nextInt(int w, int bound) {
+        int r = nextInt(w);
+        int m = bound - 1;
+        if ((bound & m) == 0) { // power of 2
+            return r & m;
+        }
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt(w) >>> 1) {
+            // u is in the incomplete last run of bound values, draw again
+        }
+        return r;
+    }
+    
+    /**
+     * the next 32 random bits of worm w, stepped and mixed as
+     * SplittableRandom.nextInt() does
+     */
+    private int nextInt(int w) {
+        long z = seeds[w] += GOLDEN_GAMMA;
+        z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+        return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+    }
+    
+    /**
+     * The step from (x,y) along bearing, with the wraparound of
+     * Worm.nextPoint(), packed as x << 32 | y.
+     */
+    private long nextPoint(int x, int y, int bearing) {
+        int newX = x + Worm.INCR_X[bearing];
+        int newY = y + Worm.INCR_Y[bearing];
+        
+        if (newX + Worm.DOT_SIZE < 0) {
+            newX = newX + pWidth;
+        } else if (newX > pWidth) {
+            newX = newX - pWidth;
+        }
+        
+        if (newY + Worm.DOT_SIZE < 0) {
+            newY = newY + pHeight;
+        } else if (newY > pHeight) {
+            newY = newY - pHeight;
+        }
+        
+        return ((long) newX << 32) | (newY & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * draw black worms with red heads, tails first
+     */
+    public void draw(Graphics g) {
+        GraphicsConfiguration gc = ((Graphics2D) g).getDeviceConfiguration();
+        if (gc != spritesGc) {
+            bodySprite = SpriteCache.getOval(gc, Worm.DOT_SIZE, Color.BLACK);
+            headSprite = SpriteCache.getOval(gc, Worm.DOT_SIZE, Color.RED);
+            spritesGc = gc;
+        }
+        for (int w = 0; w < numWorms; w++) {
+            int base = w * maxPoints;
+            int i = tailPos(w);
+            for (int n = 1; n < nPoints[w]; n++) {
+                g.drawImage(bodySprite, cellsX[base + i], cellsY[base + i], null);
+                i = i + 1 == maxPoints ? 0 : i + 1;
+            }
+            g.drawImage(headSprite, headX[w], headY[w], null);
+        }
+    }
+    
+    public void draw(TileRasterizer r) {
+        if (dotMask == null) {
+            dotMask = TileRasterizer.Mask.oval(Worm.DOT_SIZE);
+        }
+        for (int w = 0; w < numWorms; w++) {
+            int base = w * maxPoints;
+            int i = tailPos(w);
+            for (int n = 1; n < nPoints[w]; n++) {
+                r.fillMask(dotMask, cellsX[base + i], cellsY[base + i], Color.BLACK);
+                i = i + 1 == maxPoints ? 0 : i + 1;
+            }
+            r.fillMask(dotMask, headX[w], headY[w], Color.RED);
+        }
+    }
+    
+    private int tailPos(int w) {
+        int tail = headPos[w] - nPoints[w] + 1;
+        return tail < 0 ? tail + maxPoints : tail;
+    }
+    
+    /**
+     * A digest of the whole state, dots included, e.g. to check that two
+     * runs went the same way.
+     */
+    public long checksum() {
+        long hash = numWorms;
+        for (int w = 0; w < numWorms; w++) {
+            hash = hash * 31 + headX[w];
+            hash = hash * 31 + headY[w];
+            hash = hash * 31 + headPos[w];
+            hash = hash * 31 + nPoints[w];
+            hash = hash * 31 + compass[w];
+            hash = hash * 31 + seeds[w];
+        }
+        for (int i = 0; i < cellsX.length; i++) {
+            hash = hash * 31 + cellsX[i];
+            hash = hash * 31 + cellsY[i];
+        }
+        return hash;
+    }
+    
+    private class MoveTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private int from;
+        private int to;
+        
+        private MoveTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= WORMS_PER_TASK) {
+                move(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MoveTask(from, middle), new MoveTask(middle, to));
+            }
+        }
+        
+    }
+
+}
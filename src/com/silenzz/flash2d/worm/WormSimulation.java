@@ -0,0 +1,141 @@
+package com.silenzz.flash2d.worm;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.silenzz.flash2d.GameClock;
+import com.silenzz.flash2d.GameLoop;
+import com.silenzz.flash2d.GameStateListener;
+import com.silenzz.flash2d.SimulatedClock;
+import com.silenzz.flash2d.TileRasterizer;
+
+/**
+ * The WormChase game logic without a window: a worm, or a crowd of them in
+ * a {@link WormPopulation} moved on all cores, moving among random
+ * obstacles, driven by a headless {@link GameLoop} as fast as possible.
+ * Rendering, if any, goes to an offscreen BufferedImage, with Java2D or
+ * with a {@link TileRasterizer} on all cores.
+ * 
+ * Usage: WormSimulation [ticks [renderInterval [obstacles [simulated [tiled [worms]]]]]]
+ */
+public class WormSimulation implements GameStateListener {
+    
+    private static final int FPS = 60;
+    private static final int PWIDTH = 1280;
+    private static final int PHEIGHT = 1024;
+    
+    private int numObstacles;
+    private boolean tiled;
+    private int numWorms;
+    private Worm fred;
+    private WormPopulation crowd; // instead of fred for more than one worm
+    private Obstacles obs;
+    
+    private BufferedImage image;
+    private Graphics2D g;
+    private TileRasterizer rasterizer;
+    
+    public WormSimulation(int numObstacles) {
+        this(numObstacles, false);
+    }
+    
+    public WormSimulation(int numObstacles, boolean tiled) {
+        this(numObstacles, tiled, 1);
+    }
+    
+    public WormSimulation(int numObstacles, boolean tiled, int numWorms) {
+        this.numObstacles = numObstacles;
+        this.tiled = tiled;
+        this.numWorms = numWorms;
+    }
+    
+    public static void main(String[] args) {
+        long ticks = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        int renderInterval = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int numObstacles = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        boolean simulated = args.length > 3 && Boolean.parseBoolean(args[3]);
+        boolean tiled = args.length > 4 && Boolean.parseBoolean(args[4]);
+        int numWorms = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+        
+        GameClock clock = simulated ? new SimulatedClock() : GameClock.SYSTEM;
+        WormSimulation simulation = new WormSimulation(numObstacles, tiled, numWorms);
+        GameLoop gameLoop = new GameLoop(FPS, FPS, simulation, GameLoop.Mode.HEADLESS, clock);
+        gameLoop.setMaxTicks(ticks);
+        gameLoop.setRenderInterval(renderInterval);
+        
+        long startTime = System.nanoTime();
+        gameLoop.run(); // on this thread
+        long timeDiff = System.nanoTime() - startTime;
+        
+        System.out.println("Ticks: " + gameLoop.getTicks() + " in " + (timeDiff / GameLoop.MICROSECONDS) + " ms");
+        System.out.println("Ticks/sec: " + (long) (gameLoop.getTicks() * (double) GameLoop.NANOSECONDS / timeDiff));
+    }
+
+    @Override
+    public void start() {
+        obs = new Obstacles();
+        
+        Random random = new Random(42);
+        for (int i = 0; i < numObstacles; i++) {
+            obs.add(random.nextInt(PWIDTH), random.nextInt(PHEIGHT));
+        }
+        
+        if (numWorms > 1) {
+            crowd = new WormPopulation(numWorms, PWIDTH, PHEIGHT, obs, Worm.MAX_POINTS, random.nextLong());
+            crowd.setPool(ForkJoinPool.commonPool());
+        } else {
+            fred = new Worm(PWIDTH, PHEIGHT, obs, Worm.MAX_POINTS, random.nextLong());
+        }
+    }
+
+    @Override
+    public void update() {
+        if (crowd != null) {
+            crowd.moveAll();
+            return;
+        }
+        fred.move();
+    }
+
+    @Override
+    public void render() {
+        if (image == null) {
+            image = new BufferedImage(PWIDTH, PHEIGHT, BufferedImage.TYPE_INT_RGB);
+            g = image.createGraphics();
+            if (tiled) {
+                // only then, taking its pixels stops Java2D accelerating the image
+                rasterizer = new TileRasterizer(image);
+            }
+        }
+        if (tiled) {
+            rasterizer.clear(Color.WHITE);
+            obs.draw(rasterizer);
+            if (crowd != null) {
+                crowd.draw(rasterizer);
+            } else {
+                fred.draw(rasterizer);
+            }
+            rasterizer.flush();
+            return;
+        }
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, PWIDTH, PHEIGHT);
+        obs.draw(g);
+        if (crowd != null) {
+            crowd.draw(g);
+        } else {
+            fred.draw(g);
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (g != null) {
+            g.dispose();
+        }
+    }
+
+}
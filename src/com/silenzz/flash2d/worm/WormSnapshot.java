@@ -0,0 +1,70 @@
+package com.silenzz.flash2d.worm;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+
+import com.silenzz.flash2d.SpriteCache;
+
+/**
+ * The dots of a worm copied on the update thread, to be drawn on the render
+ * thread while the worm itself moves on. See {@link Worm#copyTo(WormSnapshot)}.
+ */
+public class WormSnapshot {
+    
+    // tail first, head last
+    private int[] dotsX;
+    private int[] dotsY;
+    private int nPoints;
+    
+    private GraphicsConfiguration spritesGc;
+    private Image bodySprite;
+    private Image headSprite;
+    
+    public WormSnapshot(int maxPoints) {
+        dotsX = new int[maxPoints];
+        dotsY = new int[maxPoints];
+    }
+    
+    void set(int nPoints, int[] cellsX, int[] cellsY, int tailPos) {
+        if (dotsX.length < nPoints) { // a longer worm restored from a checkpoint
+            dotsX = new int[cellsX.length];
+            dotsY = new int[cellsY.length];
+        }
+        this.nPoints = nPoints;
+        if (nPoints == 0) {
+            return; // no tail yet
+        }
+        int first = Math.min(nPoints, cellsX.length - tailPos); // up to the end of the ring
+        System.arraycopy(cellsX, tailPos, dotsX, 0, first);
+        System.arraycopy(cellsY, tailPos, dotsY, 0, first);
+        System.arraycopy(cellsX, 0, dotsX, first, nPoints - first);
+        System.arraycopy(cellsY, 0, dotsY, first, nPoints - first);
+    }
+    
+    public int getNumPoints() {
+        return nPoints;
+    }
+    
+    /**
+     * draw a black worm with a red head, as Worm.draw() does
+     */
+    public void draw(Graphics g) {
+        if (nPoints > 0) {
+            GraphicsConfiguration gc = ((Graphics2D) g).getDeviceConfiguration();
+            if (gc != spritesGc) {
+                bodySprite = SpriteCache.getOval(gc, Worm.DOT_SIZE, Color.BLACK);
+                headSprite = SpriteCache.getOval(gc, Worm.DOT_SIZE, Color.RED);
+                spritesGc = gc;
+            }
+            int head = nPoints - 1;
+            for (int i = 0; i < head; i++) {
+                g.drawImage(bodySprite, dotsX[i], dotsY[i], null);
+            }
+            g.drawImage(headSprite, dotsX[head], dotsY[head], null);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.silenzz.flash2d.worm;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The collision tests of {@link CollisionScan} on as many coordinates at a
+ * time as the CPU's widest SIMD registers hold: each bound is compared lane
+ * by lane, the masks are and-ed, and the scan stops at the first vector with
+ * any lane set. The coordinates left over at the end are tested one by one.
+ * 
+ * Loaded by name from CollisionScan.get(), see there for building it.
+ */
+class VectorCollisionScan extends CollisionScan {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * does the CPU have SIMD registers of 4 ints or more? Below that the
+     * scalar loop is as quick.
+     */
+    static boolean isSupported() {
+        return SPECIES.length() >= 4;
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + SPECIES.length() + " ints";
+    }
+
+    @Override
+    public int getScanLimit() {
+        return 4 * SPECIES.length();
+    }
+
+    @Override
+    public boolean overlaps(int[] xs, int[] ys, int from, int to, int boxSize, int x, int y, int size) {
+        // box i overlaps when x - boxSize < xs[i] < x + size, same for y
+        int minX = x - boxSize;
+        int maxX = x + size;
+        int minY = y - boxSize;
+        int maxY = y + size;
+        int i = from;
+        int bound = from + SPECIES.loopBound(Math.max(to - from, 0));
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector bx = IntVector.fromArray(SPECIES, xs, i);
+            IntVector by = IntVector.fromArray(SPECIES, ys, i);
+            VectorMask<Integer> hit = bx.compare(VectorOperators.GT, minX)
+                    .and(bx.compare(VectorOperators.LT, maxX))
+                    .and(by.compare(VectorOperators.GT, minY))
+                    .and(by.compare(VectorOperators.LT, maxY));
+            if (hit.anyTrue()) {
+                return true;
+            }
+        }
+        for (; i < to; i++) {
+            if (xs[i] > minX && xs[i] < maxX && ys[i] > minY && ys[i] < maxY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean near(int[] xs, int[] ys, int from, int to, int offset, int radius, int x, int y) {
+        // |xs[i] + offset - x| <= radius when x - offset - radius <= xs[i] <= x - offset + radius
+        int minX = x - offset - radius;
+        int maxX = x - offset + radius;
+        int minY = y - offset - radius;
+        int maxY = y - offset + radius;
+        int i = from;
+        int bound = from + SPECIES.loopBound(Math.max(to - from, 0));
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector px = IntVector.fromArray(SPECIES, xs, i);
+            IntVector py = IntVector.fromArray(SPECIES, ys, i);
+            VectorMask<Integer> hit = px.compare(VectorOperators.GE, minX)
+                    .and(px.compare(VectorOperators.LE, maxX))
+                    .and(py.compare(VectorOperators.GE, minY))
+                    .and(py.compare(VectorOperators.LE, maxY));
+            if (hit.anyTrue()) {
+                return true;
+            }
+        }
+        for (; i < to; i++) {
+            if (xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}